@@ -0,0 +1,280 @@
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// пакетная подпись конвейером: хэширование (ввод-вывод) -> возведение в степень (процессор) -> запись .sig
+// между стадиями ограниченные очереди, поэтому память не растет при любом числе файлов
+// потоки signHashes живут до close() - их не нужно создавать на каждый вызов
+public class BatchSigner implements Closeable {
+    
+    // результат подписи одного файла
+    public static class Result {
+        public final String file;
+        public final String signatureFile;  // null при ошибке
+        public final String error;          // null, если все прошло успешно
+        
+        public Result(String file, String signatureFile, String error) {
+            this.file = file;
+            this.signatureFile = signatureFile;
+            this.error = error;
+        }
+        
+        @Override
+        public String toString() {
+            return file + ": " + (error != null ? "ОШИБКА (" + error + ")" : signatureFile);
+        }
+    }
+    
+    // файл с посчитанным хэшем, ждущий подписи
+    private static class HashedFile {
+        final int index;
+        final String file;
+        final BigInteger hash;
+        
+        HashedFile(int index, String file, BigInteger hash) {
+            this.index = index;
+            this.file = file;
+            this.hash = hash;
+        }
+    }
+    
+    // маркер конца очереди для потоков подписи
+    private static final HashedFile END = new HashedFile(-1, null, null);
+    
+    // сколько хэшей поток забирает за раз в signHashes
+    private static final int HASH_BLOCK = 64;
+    
+    private final RSA.KeyPair privateKey;
+    private final int hashThreads;
+    private final int signThreads;
+    private final int queueCapacity;
+    private final RSA.HashMode mode;
+    
+    // потоки для signHashes; создаются при первом вызове (демоны, чтобы не держать JVM)
+    private ExecutorService hashSigners;
+    private boolean closed;
+    
+    public BatchSigner(RSA.KeyPair privateKey, int hashThreads, int signThreads, int queueCapacity,
+            RSA.HashMode mode) {
+        this.privateKey = privateKey;
+        this.hashThreads = hashThreads;
+        this.signThreads = signThreads;
+        this.queueCapacity = queueCapacity;
+        this.mode = mode;
+    }
+    
+    // по умолчанию: потоков по числу ядер на каждую стадию
+    public BatchSigner(RSA.KeyPair privateKey) {
+        this(privateKey, Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().availableProcessors(), 256, RSA.HashMode.STREAM);
+    }
+    
+    // ключ загружается один раз на всю пачку
+    public static BatchSigner fromKeyFile(String privateKeyFile) throws Exception {
+        return new BatchSigner(RSA.loadKeyPair(privateKeyFile, true));
+    }
+    
+    // подпись всех файлов; результаты в том же порядке, что и файлы
+    public List<Result> signAll(List<String> files) throws InterruptedException {
+        return signAll(files, null);
+    }
+    
+    // то же, но подписи дописываются в манифест вместо отдельных .sig (null - как обычно, в .sig)
+    public List<Result> signAll(List<String> files, SignatureManifest.Writer manifest) throws InterruptedException {
+        Result[] results = new Result[files.size()];
+        BlockingQueue<HashedFile> hashed = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger next = new AtomicInteger();
+        
+        // стадия записи: если очередь записи заполнена, пишет сам поток подписи (обратное давление)
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(hashThreads, hashThreads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+        
+        // стадия подписи
+        ExecutorService signers = Executors.newFixedThreadPool(signThreads);
+        for (int i = 0; i < signThreads; i++) {
+            signers.execute(() -> {
+                try {
+                    HashedFile item;
+                    while ((item = hashed.take()) != END) {
+                        sign(item, writers, manifest, results);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        
+        // стадия хэширования: потоки разбирают группы из RSA.hashingGroups (небольшие файлы
+        // группы хэшируются вместе, большой файл - сам по себе) и кладут хэши в очередь
+        List<int[]> groups = RSA.hashingGroups(files);
+        ExecutorService hashers = Executors.newFixedThreadPool(hashThreads);
+        for (int i = 0; i < hashThreads; i++) {
+            hashers.execute(() -> {
+                try {
+                    int group;
+                    while ((group = next.getAndIncrement()) < groups.size()) {
+                        hashGroup(files, groups.get(group), hashed, results);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        
+        try {
+            // все хэши готовы -> сообщаем потокам подписи, что работы больше не будет
+            hashers.shutdown();
+            hashers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            for (int i = 0; i < signThreads; i++) {
+                hashed.put(END);
+            }
+            
+            signers.shutdown();
+            signers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            writers.shutdown();
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            hashers.shutdownNow();
+            signers.shutdownNow();
+            writers.shutdownNow();
+        }
+        
+        return new ArrayList<>(Arrays.asList(results));
+    }
+    
+    private void hashGroup(List<String> files, int[] group, BlockingQueue<HashedFile> hashed,
+            Result[] results) throws InterruptedException {
+        List<String> names = new ArrayList<>(group.length);
+        for (int index : group) {
+            names.add(files.get(index));
+        }
+        BigInteger[] small;
+        try {
+            small = RSA.hashSmallFiles(names);
+        } catch (Exception e) {
+            // при ошибке группы каждый файл хэшируется отдельно, чтобы ошибка осталась у своего файла
+            small = new BigInteger[group.length];
+        }
+        
+        for (int i = 0; i < group.length; i++) {
+            int index = group[i];
+            String file = names.get(i);
+            try {
+                BigInteger hash = small[i];
+                if (hash == null) {
+                    hash = RSA.computeFileHash(file, mode);
+                }
+                hashed.put(new HashedFile(index, file, hash));
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                results[index] = new Result(file, null, e.toString());
+            }
+        }
+    }
+    
+    private void sign(HashedFile item, ExecutorService writers, SignatureManifest.Writer manifest,
+            Result[] results) {
+        BigInteger signature;
+        try {
+            signature = RSA.signHash(item.hash, privateKey);
+        } catch (RuntimeException e) {
+            results[item.index] = new Result(item.file, null, e.toString());
+            return;
+        }
+        
+        // запись подписи уходит на отдельную стадию, поток подписи сразу берет следующий хэш
+        writers.execute(() -> {
+            try {
+                String signatureFile;
+                if (manifest != null) {
+                    manifest.append(item.file, item.hash, signature);
+                    signatureFile = manifest.getPath();
+                } else {
+                    signatureFile = item.file + ".sig";
+                    RSA.saveSignature(signature, signatureFile);
+                }
+                results[item.index] = new Result(item.file, signatureFile, null);
+            } catch (Exception e) {
+                results[item.index] = new Result(item.file, null, e.toString());
+            }
+        });
+    }
+    
+    // подпись набора уже посчитанных хэшей (например, токенов) одним ключом
+    // ключ готовится один раз (КТО, контексты Монтгомери), потоки забирают хэши блоками по индексу
+    // и пишут подпись на ее место в массиве - без очередей и объектов на каждый хэш
+    public BigInteger[] signHashes(BigInteger[] hashes) throws InterruptedException, ExecutionException {
+        BigInteger[] signatures = new BigInteger[hashes.length];
+        RSA.prepare(privateKey);
+        
+        int threads = Math.max(1, Math.min(signThreads, (hashes.length + HASH_BLOCK - 1) / HASH_BLOCK));
+        AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(() -> {
+                int from;
+                while ((from = next.getAndAdd(HASH_BLOCK)) < hashes.length) {
+                    int to = Math.min(from + HASH_BLOCK, hashes.length);
+                    for (int j = from; j < to; j++) {
+                        signatures[j] = RSA.signHash(hashes[j], privateKey);
+                    }
+                }
+                return null;
+            });
+        }
+        
+        for (Future<Void> done : hashSigners().invokeAll(workers)) {
+            done.get();
+        }
+        return signatures;
+    }
+    
+    // остановка потоков signHashes; signAll своими потоками управляет сам и работает и после close
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (hashSigners != null) {
+            hashSigners.shutdownNow();
+        }
+    }
+    
+    private synchronized ExecutorService hashSigners() {
+        if (closed) {
+            throw new IllegalStateException("BatchSigner закрыт");
+        }
+        if (hashSigners == null) {
+            hashSigners = Executors.newFixedThreadPool(signThreads, task -> {
+                Thread thread = new Thread(task, "rsa-batch-signer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return hashSigners;
+    }
+    
+    // краткая сводка с пропускной способностью
+    public static String summary(List<Result> results, long nanos) {
+        int failed = 0;
+        for (Result r : results) {
+            if (r.error != null) {
+                failed++;
+            }
+        }
+        double perSecond = (results.size() - failed) / (nanos / 1e9);
+        return "Подписано: " + (results.size() - failed) + ", ошибок: " + failed
+                + String.format(", %.1f подписей/с", perSecond);
+    }
+}
\ No newline at end of file
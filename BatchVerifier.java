@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// пакетная проверка подписей: ключ загружается один раз, файлы проверяются параллельно
+public class BatchVerifier {
+    
+    // результат проверки одного файла
+    public static class Result {
+        public final String file;
+        public final boolean valid;
+        public final String error;      // null, если проверка прошла без исключений
+        public final long nanos;        // время проверки файла
+        
+        public Result(String file, boolean valid, String error, long nanos) {
+            this.file = file;
+            this.valid = valid;
+            this.error = error;
+            this.nanos = nanos;
+        }
+        
+        @Override
+        public String toString() {
+            String status = error != null ? "ОШИБКА (" + error + ")" : (valid ? "верна" : "неверна");
+            return file + ": " + status + ", " + (nanos / 1_000_000) + " мс";
+        }
+    }
+    
+    // проверка всех файлов папки, у которых рядом лежит .sig
+    public static List<Result> verifyDirectory(String directory, String publicKeyFile, int threads)
+            throws Exception {
+        return verifyAll(listSignedFiles(directory), RSA.loadKeyPair(publicKeyFile, false), threads);
+    }
+    
+    // проверка списка файлов на своем ForkJoinPool с заданным числом потоков
+    public static List<Result> verifyAll(Collection<String> files, RSA.KeyPair publicKey, int threads)
+            throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return verifyAll(files, publicKey, pool, RSA.HashMode.STREAM);
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    // проверка на переданном исполнителе; результаты идут в том же порядке, что и файлы
+    public static List<Result> verifyAll(Collection<String> files, RSA.KeyPair publicKey,
+            ExecutorService executor, RSA.HashMode mode) throws InterruptedException {
+        return verifyAll(files, publicKey, executor, mode, null);
+    }
+    
+    // то же, но подписи берутся из манифеста (null - из .sig рядом с файлами)
+    public static List<Result> verifyAll(Collection<String> files, RSA.KeyPair publicKey,
+            ExecutorService executor, RSA.HashMode mode, SignatureManifest manifest) throws InterruptedException {
+        return verifyAll(files, publicKey, executor, mode, manifest, true);
+    }
+    
+    // cacheable = false - кэш проверок (RSA.setVerifyCache) не используется, каждая подпись проверяется заново
+    public static List<Result> verifyAll(Collection<String> files, RSA.KeyPair publicKey,
+            ExecutorService executor, RSA.HashMode mode, SignatureManifest manifest, boolean cacheable)
+            throws InterruptedException {
+        // задача на группу из RSA.hashingGroups: небольшие файлы группы хэшируются вместе,
+        // большой файл - отдельной задачей
+        List<String> list = new ArrayList<>(files);
+        List<int[]> groups = RSA.hashingGroups(list);
+        List<Callable<List<Result>>> tasks = new ArrayList<>();
+        for (int[] group : groups) {
+            List<String> names = new ArrayList<>(group.length);
+            for (int index : group) {
+                names.add(list.get(index));
+            }
+            tasks.add(() -> verifyGroup(names, publicKey, mode, manifest, cacheable));
+        }
+        
+        // результаты раскладываются по исходным позициям файлов
+        Result[] results = new Result[list.size()];
+        List<Future<List<Result>>> futures = executor.invokeAll(tasks);
+        for (int g = 0; g < groups.size(); g++) {
+            List<Result> groupResults;
+            try {
+                groupResults = futures.get(g).get();
+            } catch (Exception e) {
+                // verifyOne сам ловит исключения, сюда попадаем только при отмене задачи
+                throw new IllegalStateException("Проверка прервана", e);
+            }
+            int[] group = groups.get(g);
+            for (int i = 0; i < group.length; i++) {
+                results[group[i]] = groupResults.get(i);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+    
+    // файлы папки, для которых есть подпись (сами .sig пропускаем)
+    public static List<String> listSignedFiles(String directory) throws IOException {
+        List<String> files = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(Paths.get(directory))) {
+            entries.filter(Files::isRegularFile)
+                   .map(Path::toString)
+                   .filter(name -> !name.endsWith(".sig"))
+                   .filter(name -> Files.exists(Paths.get(name + ".sig")))
+                   .sorted()
+                   .forEach(files::add);
+        }
+        return files;
+    }
+    
+    // краткая сводка по результатам
+    public static String summary(List<Result> results) {
+        int valid = 0;
+        int invalid = 0;
+        int errors = 0;
+        for (Result r : results) {
+            if (r.error != null) {
+                errors++;
+            } else if (r.valid) {
+                valid++;
+            } else {
+                invalid++;
+            }
+        }
+        return "Всего: " + results.size() + ", верных: " + valid
+                + ", неверных: " + invalid + ", ошибок: " + errors;
+    }
+    
+    private static List<Result> verifyGroup(List<String> group, RSA.KeyPair publicKey, RSA.HashMode mode,
+            SignatureManifest manifest, boolean cacheable) {
+        long start = System.nanoTime();
+        BigInteger[] hashes;
+        try {
+            hashes = RSA.hashSmallFiles(group);
+        } catch (Exception e) {
+            // ошибку покажет проверка конкретного файла
+            hashes = new BigInteger[group.size()];
+        }
+        // время общего хэширования делится поровну между файлами группы
+        long sharedNanos = (System.nanoTime() - start) / group.size();
+        
+        List<Result> results = new ArrayList<>(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            results.add(verifyOne(group.get(i), hashes[i], publicKey, mode, manifest, cacheable, sharedNanos));
+        }
+        return results;
+    }
+    
+    private static Result verifyOne(String file, BigInteger hash, RSA.KeyPair publicKey, RSA.HashMode mode,
+            SignatureManifest manifest, boolean cacheable, long sharedNanos) {
+        long start = System.nanoTime() - sharedNanos;
+        try {
+            boolean valid = RSA.verifySignature(file, hash, manifest, publicKey, mode, cacheable);
+            return new Result(file, valid, null, System.nanoTime() - start);
+        } catch (Exception e) {
+            return new Result(file, false, e.toString(), System.nanoTime() - start);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// кэш хэшей SHA-256 по метаданным файла (путь, размер, время изменения, inode)
+// хранится в одном индексном файле, новые записи дописываются в конец;
+// когда устаревших строк становится больше половины, индекс переписывается (compact)
+// изменение файла без смены размера и времени изменения (например, touch -r) кэш не заметит
+public class DigestCache {
+    
+    // метаданные файла, по которым решаем, менялся ли он
+    public static class FileState {
+        final long size;
+        final long modifiedNanos;
+        final String fileKey;   // inode (или null, если ФС его не дает)
+        
+        FileState(long size, long modifiedNanos, String fileKey) {
+            this.size = size;
+            this.modifiedNanos = modifiedNanos;
+            this.fileKey = fileKey;
+        }
+        
+        public static FileState of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey();
+            return new FileState(attributes.size(),
+                    attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    fileKey == null ? null : fileKey.toString());
+        }
+        
+        boolean sameAs(FileState other) {
+            return size == other.size && modifiedNanos == other.modifiedNanos
+                    && Objects.equals(fileKey, other.fileKey);
+        }
+    }
+    
+    private static class Entry {
+        final FileState state;
+        final byte[] digest;
+        
+        Entry(FileState state, byte[] digest) {
+            this.state = state;
+            this.digest = digest;
+        }
+    }
+    
+    // индекс переписывается, если строк в нем больше COMPACT_RATIO * записей (и не меньше COMPACT_MIN_LINES)
+    private static final int COMPACT_RATIO = 2;
+    private static final int COMPACT_MIN_LINES = 1024;
+    
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    // строк в индексном файле, включая перекрытые более поздними
+    private long lines;
+    
+    // индекс читается при создании (если файла еще нет - кэш пустой)
+    public DigestCache(String indexFile) throws IOException {
+        this.indexFile = Paths.get(indexFile);
+        if (Files.exists(this.indexFile)) {
+            load();
+            compactIfNeeded();
+        }
+    }
+    
+    // хэш из кэша или null, если записи нет либо файл изменился
+    public byte[] lookup(Path path, FileState current) {
+        Entry entry = entries.get(key(path));
+        if (entry != null && entry.state.sameAs(current)) {
+            hits.incrementAndGet();
+            return entry.digest.clone();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+    
+    // запоминаем хэш, если за время хэширования файл не поменялся
+    public void store(Path path, FileState before, byte[] digest) throws IOException {
+        if (!FileState.of(path).sameAs(before)) {
+            return;
+        }
+        
+        String key = key(path);
+        entries.put(key, new Entry(before, digest.clone()));
+        append(key, before, digest);
+    }
+    
+    // переписываем индекс без устаревших записей
+    public synchronized void compact() throws IOException {
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.write(line(e.getKey(), e.getValue().state, e.getValue().digest));
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        lines = entries.size();
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    @Override
+    public String toString() {
+        return "Кэш хэшей: записей " + entries.size() + ", попаданий " + hits.get() + ", промахов " + misses.get();
+    }
+    
+    // строка индекса: хэш, размер, время изменения, inode, путь (путь последним - в нем могут быть табы)
+    private static String line(String key, FileState state, byte[] digest) {
+        return SHA256.hashToHex(digest) + "\t" + state.size + "\t" + state.modifiedNanos + "\t"
+                + (state.fileKey == null ? "-" : state.fileKey) + "\t" + key + "\n";
+    }
+    
+    private synchronized void append(String key, FileState state, byte[] digest) throws IOException {
+        Files.writeString(indexFile, line(key, state, digest), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        lines++;
+        compactIfNeeded();
+    }
+    
+    private synchronized void compactIfNeeded() throws IOException {
+        if (lines >= COMPACT_MIN_LINES && lines > (long) COMPACT_RATIO * entries.size()) {
+            compact();
+        }
+    }
+    
+    // более поздняя строка для того же пути перекрывает раннюю
+    private void load() throws IOException {
+        List<String> all = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+        lines = all.size();
+        for (String line : all) {
+            String[] parts = line.split("\t", 5);
+            if (parts.length < 5 || parts[0].length() != 64) {
+                continue; // недописанная или битая строка
+            }
+            try {
+                FileState state = new FileState(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                        parts[3].equals("-") ? null : parts[3]);
+                entries.put(parts[4], new Entry(state, fromHex(parts[0])));
+            } catch (NumberFormatException e) {
+                // пропускаем битую строку
+            }
+        }
+    }
+    
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+    
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// замер скорости хэширования файла разными способами чтения (МБ/с)
+public class FileHashBenchmark {
+    
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+    
+    public static void main(String[] args) throws Exception {
+        // размер тестового файла в мегабайтах
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        // диагностика в консоль не должна попадать в замеры
+        RSA.setVerbose(false);
+        
+        Path file = Files.createTempFile("rsa-hash-bench", ".bin");
+        try {
+            writeRandomFile(file, sizeMb);
+            
+            for (RSA.HashMode mode : RSA.HashMode.values()) {
+                // прогрев, чтобы JIT успел скомпилировать цикл сжатия
+                for (int i = 0; i < WARMUP_RUNS; i++) {
+                    RSA.computeFileHash(file.toString(), mode);
+                }
+                
+                long start = System.nanoTime();
+                for (int i = 0; i < MEASURED_RUNS; i++) {
+                    RSA.computeFileHash(file.toString(), mode);
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                
+                double mbPerSecond = (double) sizeMb * MEASURED_RUNS / seconds;
+                System.out.printf("%-7s %10.1f МБ/с%n", mode, mbPerSecond);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    // файл из случайных байт нужного размера
+    private static void writeRandomFile(Path file, int sizeMb) throws IOException {
+        byte[] chunk = new byte[1024 * 1024];
+        Random random = new Random(42);
+        
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < sizeMb; i++) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+    }
+}
\ No newline at end of file
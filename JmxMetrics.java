@@ -0,0 +1,90 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// метрики RSA с выгрузкой через JMX
+// счетчики на LongAdder, чтобы параллельная пакетная подпись не упиралась в один атомик
+public class JmxMetrics implements RSAMetrics, JmxMetricsMBean {
+    
+    public static final String DEFAULT_NAME = "rsa:type=Metrics";
+    
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> nanos = new ConcurrentHashMap<>();
+    private final LongAdder bytesHashed = new LongAdder();
+    
+    // создание, регистрация в платформенном MBean-сервере и подключение к RSA
+    public static JmxMetrics install() throws JMException {
+        JmxMetrics metrics = new JmxMetrics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DEFAULT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(metrics, name);
+        RSA.setMetrics(metrics);
+        return metrics;
+    }
+    
+    @Override
+    public void time(String operation, long elapsed) {
+        counts.computeIfAbsent(operation, k -> new LongAdder()).increment();
+        nanos.computeIfAbsent(operation, k -> new LongAdder()).add(elapsed);
+    }
+    
+    @Override
+    public void increment(String counter) {
+        counts.computeIfAbsent(counter, k -> new LongAdder()).increment();
+    }
+    
+    @Override
+    public void bytesHashed(long bytes) {
+        bytesHashed.add(bytes);
+    }
+    
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        counts.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+    
+    @Override
+    public Map<String, Double> getTotalMillis() {
+        Map<String, Double> result = new TreeMap<>();
+        nanos.forEach((name, total) -> result.put(name, total.sum() / 1e6));
+        return result;
+    }
+    
+    @Override
+    public Map<String, Double> getAverageMillis() {
+        Map<String, Double> result = new TreeMap<>();
+        nanos.forEach((name, total) -> {
+            long count = counts.get(name).sum();
+            result.put(name, count == 0 ? 0 : total.sum() / 1e6 / count);
+        });
+        return result;
+    }
+    
+    @Override
+    public long getBytesHashed() {
+        return bytesHashed.sum();
+    }
+    
+    @Override
+    public void reset() {
+        counts.clear();
+        nanos.clear();
+        bytesHashed.reset();
+    }
+    
+    @Override
+    public String toString() {
+        return "Метрики RSA: вызовы " + getCounts() + ", среднее время (мс) " + getAverageMillis()
+                + ", захэшировано байт " + getBytesHashed();
+    }
+}
\ No newline at end of file
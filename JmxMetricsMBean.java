@@ -0,0 +1,17 @@
+import java.util.Map;
+
+// то, что JmxMetrics показывает через JMX (jconsole, VisualVM и т.п.)
+public interface JmxMetricsMBean {
+    
+    // количество вызовов по таймерам и счетчикам
+    Map<String, Long> getCounts();
+    
+    // суммарное и среднее время по таймерам, в миллисекундах
+    Map<String, Double> getTotalMillis();
+    
+    Map<String, Double> getAverageMillis();
+    
+    long getBytesHashed();
+    
+    void reset();
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// кэш загруженных ключей в памяти
+// запись по пути проверяется по времени изменения, размеру и inode файла - подмена ключа на диске сразу видна
+// вытеснение - приближенный LRU, без общей блокировки (ConcurrentHashMap + счетчик обращений)
+public class KeyCache {
+    
+    // ключ кэша: путь + какой ключ из файла нужен
+    private static class CacheKey {
+        final String path;
+        final boolean isPrivate;
+        
+        CacheKey(String path, boolean isPrivate) {
+            this.path = path;
+            this.isPrivate = isPrivate;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return isPrivate == other.isPrivate && path.equals(other.path);
+        }
+        
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + (isPrivate ? 1 : 0);
+        }
+    }
+    
+    // закэшированный ключ и метаданные файла, из которого он прочитан
+    private static class Entry {
+        final RSA.KeyPair keys;
+        final RSA.KeyPair publicOnly;   // то, что отдается по отпечатку (null, если нет открытой экспоненты)
+        final long modifiedNanos;
+        final long size;
+        final Object fileKey;
+        volatile long lastAccess;
+        
+        Entry(RSA.KeyPair keys, BasicFileAttributes attributes, long tick) {
+            this.keys = keys;
+            this.publicOnly = keys.publicExponent != null
+                    ? new RSA.KeyPair(keys.modulus, keys.publicExponent, null)
+                    : null;
+            this.modifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            this.size = attributes.size();
+            this.fileKey = attributes.fileKey();
+            this.lastAccess = tick;
+        }
+        
+        boolean matches(BasicFileAttributes attributes) {
+            return modifiedNanos == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && size == attributes.size()
+                    && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+    
+    private final int maxEntries;
+    private final Map<CacheKey, Entry> entries = new ConcurrentHashMap<>();
+    
+    // доступ по отпечатку открытого ключа (hex); здесь только открытые части, без d и p, q
+    private final Map<String, RSA.KeyPair> byFingerprint = new ConcurrentHashMap<>();
+    
+    // логические часы для LRU
+    private final AtomicLong clock = new AtomicLong();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    public KeyCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+    
+    // ключ из кэша, если файл не менялся, иначе читаем заново
+    public RSA.KeyPair get(String keyFile, boolean isPrivate) throws IOException, ClassNotFoundException {
+        Path path = Paths.get(keyFile);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        CacheKey key = new CacheKey(path.toAbsolutePath().normalize().toString(), isPrivate);
+        
+        Entry entry = entries.get(key);
+        if (entry != null && entry.matches(attributes)) {
+            entry.lastAccess = clock.incrementAndGet();
+            hits.incrementAndGet();
+            return entry.keys;
+        }
+        
+        misses.incrementAndGet();
+        RSA.KeyPair keys = KeyFormat.read(path, isPrivate);
+        Entry created = new Entry(keys, attributes, clock.incrementAndGet());
+        
+        // отпечаток считаем сразу, чтобы горячие вызовы его не пересчитывали
+        if (created.publicOnly != null) {
+            byFingerprint.put(SHA256.hashToHex(created.publicOnly.fingerprint()), created.publicOnly);
+        }
+        
+        Entry previous = entries.put(key, created);
+        if (previous != null) {
+            forgetFingerprint(previous);
+        }
+        evictIfNeeded();
+        return keys;
+    }
+    
+    // открытый ключ по hex-отпечатку, если он (или его закрытый ключ) уже загружался через кэш
+    public RSA.KeyPair getByFingerprint(String fingerprintHex) {
+        RSA.KeyPair keys = byFingerprint.get(fingerprintHex);
+        if (keys != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return keys;
+    }
+    
+    public void clear() {
+        entries.clear();
+        byFingerprint.clear();
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Кэш ключей: записей %d, попаданий %d, промахов %d, вытеснено %d (%.1f%%)",
+                entries.size(), hits.get(), misses.get(), evictions.get(), getHitRate() * 100);
+    }
+    
+    // вытесняем самые давно использованные записи, пока не уложимся в лимит
+    private void evictIfNeeded() {
+        while (entries.size() > maxEntries) {
+            Map.Entry<CacheKey, Entry> oldest = null;
+            for (Map.Entry<CacheKey, Entry> candidate : entries.entrySet()) {
+                if (oldest == null || candidate.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = candidate;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            if (entries.remove(oldest.getKey(), oldest.getValue())) {
+                forgetFingerprint(oldest.getValue());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+    
+    private void forgetFingerprint(Entry entry) {
+        if (entry.publicOnly != null) {
+            byFingerprint.remove(SHA256.hashToHex(entry.publicOnly.fingerprint()), entry.publicOnly);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,454 @@
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+
+// форматы файлов ключей:
+// - компактный двоичный (по умолчанию): "RSAK", версия, тип, затем числа с префиксом длины
+// - PKCS#1 / PKCS#8 / X.509 SubjectPublicKeyInfo в DER и PEM для обмена с другими инструментами
+// - старые файлы из ObjectOutputStream (только чтение)
+public class KeyFormat {
+    
+    private static final byte[] MAGIC = {'R', 'S', 'A', 'K'};
+    private static final int VERSION = 1;
+    private static final int TYPE_PUBLIC = 0;
+    private static final int TYPE_PRIVATE = 1;
+    
+    // OID rsaEncryption 1.2.840.113549.1.1.1 (уже в DER)
+    private static final byte[] RSA_ALGORITHM = {
+        0x30, 0x0d, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00
+    };
+    
+    // теги ASN.1
+    private static final int INTEGER = 0x02;
+    private static final int BIT_STRING = 0x03;
+    private static final int OCTET_STRING = 0x04;
+    private static final int SEQUENCE = 0x30;
+    
+    // ===== компактный формат =====
+    
+    // открытый: n, e; закрытый: n, e, d, p, q, dP, dQ, qInv (отсутствующее число пишется длиной 0)
+    public static byte[] encodeCompact(RSA.KeyPair keys, boolean isPrivate) {
+        BigInteger[] fields = isPrivate
+                ? new BigInteger[] {keys.modulus, keys.publicExponent, keys.privateExponent,
+                        keys.primeP, keys.primeQ, keys.exponentP, keys.exponentQ, keys.crtCoefficient}
+                : new BigInteger[] {keys.modulus, keys.publicExponent};
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(isPrivate ? TYPE_PRIVATE : TYPE_PUBLIC);
+            out.writeByte(fields.length);
+            for (BigInteger field : fields) {
+                byte[] magnitude = field == null ? new byte[0] : unsignedBytes(field);
+                out.writeInt(magnitude.length);
+                out.write(magnitude);
+            }
+        } catch (IOException e) {
+            // в массив запись не падает
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static RSA.KeyPair decodeCompact(ByteBuffer in, boolean isPrivate) throws IOException {
+        in.position(MAGIC.length);
+        require(in, 3);
+        int version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия файла ключа: " + version);
+        }
+        boolean hasPrivate = in.get() == TYPE_PRIVATE;
+        int count = in.get();
+        
+        BigInteger[] fields = new BigInteger[8];
+        for (int i = 0; i < count; i++) {
+            require(in, 4);
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                throw new IOException("Файл ключа поврежден");
+            }
+            if (length > 0 && i < fields.length) {
+                byte[] magnitude = new byte[length];
+                in.get(magnitude);
+                fields[i] = new BigInteger(1, magnitude);
+            } else {
+                in.position(in.position() + length);
+            }
+        }
+        
+        if (isPrivate && !hasPrivate) {
+            throw new IOException("В файле открытый ключ, а нужен закрытый");
+        }
+        return toKeyPair(fields, isPrivate);
+    }
+    
+    // обрезанный файл - IOException, а не BufferUnderflowException
+    private static void require(ByteBuffer in, int bytes) throws IOException {
+        if (in.remaining() < bytes) {
+            throw new IOException("Файл ключа поврежден (обрезан)");
+        }
+    }
+    
+    // ===== DER =====
+    
+    // PKCS#1 RSAPublicKey ::= SEQUENCE { n, e }
+    public static byte[] encodePkcs1Public(RSA.KeyPair keys) {
+        return sequence(integer(keys.modulus), integer(keys.publicExponent));
+    }
+    
+    // X.509 SubjectPublicKeyInfo ::= SEQUENCE { алгоритм, BIT STRING (RSAPublicKey) }
+    public static byte[] encodeX509Public(RSA.KeyPair keys) {
+        byte[] pkcs1 = encodePkcs1Public(keys);
+        byte[] bits = new byte[pkcs1.length + 1];
+        System.arraycopy(pkcs1, 0, bits, 1, pkcs1.length);
+        return sequence(RSA_ALGORITHM, tlv(BIT_STRING, bits));
+    }
+    
+    // PKCS#1 RSAPrivateKey ::= SEQUENCE { 0, n, e, d, p, q, dP, dQ, qInv }
+    public static byte[] encodePkcs1Private(RSA.KeyPair keys) {
+        if (!keys.hasCrt() || keys.publicExponent == null) {
+            throw new IllegalArgumentException("Для PKCS#1 нужен закрытый ключ с e, p и q");
+        }
+        return sequence(integer(BigInteger.ZERO), integer(keys.modulus), integer(keys.publicExponent),
+                integer(keys.privateExponent), integer(keys.primeP), integer(keys.primeQ),
+                integer(keys.exponentP), integer(keys.exponentQ), integer(keys.crtCoefficient));
+    }
+    
+    // PKCS#8 PrivateKeyInfo ::= SEQUENCE { 0, алгоритм, OCTET STRING (RSAPrivateKey) }
+    public static byte[] encodePkcs8Private(RSA.KeyPair keys) {
+        return sequence(integer(BigInteger.ZERO), RSA_ALGORITHM, tlv(OCTET_STRING, encodePkcs1Private(keys)));
+    }
+    
+    // разбор любого из четырех DER-вариантов
+    public static RSA.KeyPair decodeDer(byte[] der, boolean isPrivate) throws IOException {
+        return decodeDer(der, isPrivate, 0);
+    }
+    
+    // nested - уровень вложенности: внутри X.509 и PKCS#8 лежит только PKCS#1, глубже не разбираем
+    private static RSA.KeyPair decodeDer(byte[] der, boolean isPrivate, int nested) throws IOException {
+        if (nested > 1) {
+            throw new IOException("Неожиданная вложенность DER");
+        }
+        DerReader outer = new DerReader(der).enter(SEQUENCE);
+        
+        // SubjectPublicKeyInfo: первым идет SEQUENCE алгоритма
+        if (outer.peekTag() == SEQUENCE) {
+            outer.skip();
+            byte[] bits = outer.read(BIT_STRING);
+            if (bits.length < 1) {
+                throw new IOException("Пустой BIT STRING в DER");
+            }
+            return decodeDer(Arrays.copyOfRange(bits, 1, bits.length), isPrivate, nested + 1);
+        }
+        
+        BigInteger first = outer.readInteger();
+        
+        // PKCS#8: версия, алгоритм, OCTET STRING с PKCS#1 внутри
+        if (outer.hasMore() && outer.peekTag() == SEQUENCE) {
+            outer.skip();
+            return decodeDer(outer.read(OCTET_STRING), isPrivate, nested + 1);
+        }
+        
+        BigInteger[] fields = new BigInteger[8];
+        if (first.signum() == 0 && outer.hasMore()) {
+            // PKCS#1 закрытый: после версии 8 чисел
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = outer.readInteger();
+            }
+        } else {
+            // PKCS#1 открытый: n, e
+            fields[0] = first;
+            fields[1] = outer.readInteger();
+            if (isPrivate) {
+                throw new IOException("В файле открытый ключ, а нужен закрытый");
+            }
+        }
+        return toKeyPair(fields, isPrivate);
+    }
+    
+    // ===== PEM =====
+    
+    public static String toPem(String label, byte[] der) {
+        String body = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der);
+        return "-----BEGIN " + label + "-----\n" + body + "\n-----END " + label + "-----\n";
+    }
+    
+    private static byte[] fromPem(String pem) throws IOException {
+        int begin = pem.indexOf("-----BEGIN ");
+        int bodyStart = pem.indexOf('\n', begin);
+        int end = pem.indexOf("-----END ", bodyStart);
+        if (begin < 0 || bodyStart < 0 || end < 0) {
+            throw new IOException("Некорректный PEM");
+        }
+        try {
+            return Base64.getMimeDecoder().decode(pem.substring(bodyStart + 1, end));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректный PEM", e);
+        }
+    }
+    
+    // экспорт в PEM: открытый ключ как "PUBLIC KEY", закрытый как "PRIVATE KEY" (PKCS#8)
+    public static void savePem(RSA.KeyPair keys, String file, boolean isPrivate) throws IOException {
+        String pem = isPrivate
+                ? toPem("PRIVATE KEY", encodePkcs8Private(keys))
+                : toPem("PUBLIC KEY", encodeX509Public(keys));
+        Files.writeString(Path.of(file), pem, StandardCharsets.US_ASCII);
+    }
+    
+    // ===== чтение с определением формата =====
+    
+    // файл читается целиком одним вызовом, формат определяется по первым байтам
+    public static RSA.KeyPair read(Path file, boolean isPrivate) throws IOException, ClassNotFoundException {
+        return decode(Files.readAllBytes(file), isPrivate);
+    }
+    
+    public static RSA.KeyPair decode(byte[] data, boolean isPrivate) throws IOException, ClassNotFoundException {
+        if (startsWith(data, MAGIC)) {
+            return decodeCompact(ByteBuffer.wrap(data), isPrivate);
+        }
+        if (data.length >= 2 && (data[0] & 0xFF) == 0xAC && (data[1] & 0xFF) == 0xED) {
+            return decodeLegacy(data, isPrivate);
+        }
+        if (startsWith(data, "-----BEGIN".getBytes(StandardCharsets.US_ASCII))) {
+            return decodeDer(fromPem(new String(data, StandardCharsets.US_ASCII)), isPrivate);
+        }
+        if (data.length > 0 && data[0] == SEQUENCE) {
+            return decodeDer(data, isPrivate);
+        }
+        throw new IOException("Неизвестный формат файла ключа");
+    }
+    
+    // старый формат: BigInteger через ObjectOutputStream (n, exp, затем для закрытого - параметры КТО)
+    // фильтр пропускает только BigInteger, чтобы подсунутый файл не мог создать произвольные объекты
+    private static RSA.KeyPair decodeLegacy(byte[] data, boolean isPrivate)
+            throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            ois.setObjectInputFilter(info -> {
+                // массив не может быть длиннее самого файла - иначе поддельная длина съест всю память
+                if (info.arrayLength() > data.length || info.depth() > 4) {
+                    return ObjectInputFilter.Status.REJECTED;
+                }
+                Class<?> type = info.serialClass();
+                if (type == null || type == BigInteger.class || type == Number.class || type == byte[].class) {
+                    return ObjectInputFilter.Status.UNDECIDED;
+                }
+                return ObjectInputFilter.Status.REJECTED;
+            });
+            
+            BigInteger modulus = (BigInteger) ois.readObject();
+            BigInteger exponent = (BigInteger) ois.readObject();
+            if (modulus == null || exponent == null) {
+                throw new IOException("Файл ключа поврежден");
+            }
+            
+            if (!isPrivate) {
+                return new RSA.KeyPair(modulus, exponent, null);
+            }
+            
+            RSA.KeyPair keys = new RSA.KeyPair(modulus, null, exponent);
+            // параметры КТО в закрытом ключе (в самых старых файлах их нет - тогда подпись без КТО)
+            try {
+                keys.primeP = (BigInteger) ois.readObject();
+                keys.primeQ = (BigInteger) ois.readObject();
+                keys.exponentP = (BigInteger) ois.readObject();
+                keys.exponentQ = (BigInteger) ois.readObject();
+                keys.crtCoefficient = (BigInteger) ois.readObject();
+            } catch (EOFException e) {
+                keys.primeP = null;
+                keys.primeQ = null;
+                keys.exponentP = null;
+                keys.exponentQ = null;
+                keys.crtCoefficient = null;
+            }
+            return checkCrt(keys);
+        } catch (RuntimeException e) {
+            // битые данные внутри BigInteger (ClassCastException, NullPointerException, отрицательная
+            // длина массива и т.п.) - это поврежденный файл, а не ошибка программы
+            throw new IOException("Файл ключа поврежден", e);
+        }
+    }
+    
+    // поля в порядке n, e, d, p, q, dP, dQ, qInv
+    private static RSA.KeyPair toKeyPair(BigInteger[] fields, boolean isPrivate) throws IOException {
+        if (fields[0] == null || fields[isPrivate ? 2 : 1] == null) {
+            throw new IOException("В файле ключа нет модуля или экспоненты");
+        }
+        if (!isPrivate) {
+            return new RSA.KeyPair(fields[0], fields[1], null);
+        }
+        RSA.KeyPair keys = new RSA.KeyPair(fields[0], fields[1], fields[2]);
+        keys.primeP = fields[3];
+        keys.primeQ = fields[4];
+        keys.exponentP = fields[5];
+        keys.exponentQ = fields[6];
+        keys.crtCoefficient = fields[7];
+        return checkCrt(keys);
+    }
+    
+    // параметры КТО из файла должны соответствовать n и d: подпись с испорченным dP, dQ или qInv
+    // верна только по одному из простых, и по ней раскладывается n (q = НОД(s^e - m, n))
+    private static RSA.KeyPair checkCrt(RSA.KeyPair keys) throws IOException {
+        if (!keys.hasCrt()) {
+            return keys;
+        }
+        BigInteger p = keys.primeP;
+        BigInteger q = keys.primeQ;
+        boolean consistent = p.signum() > 0 && q.signum() > 0
+                && p.multiply(q).equals(keys.modulus)
+                && keys.crtCoefficient.multiply(q).mod(p).equals(BigInteger.ONE);
+        if (consistent && keys.privateExponent != null) {
+            consistent = keys.exponentP.equals(keys.privateExponent.mod(p.subtract(BigInteger.ONE)))
+                    && keys.exponentQ.equals(keys.privateExponent.mod(q.subtract(BigInteger.ONE)));
+        }
+        if (!consistent) {
+            throw new IOException("Параметры КТО в файле ключа не согласованы с ключом (файл поврежден)");
+        }
+        return keys;
+    }
+    
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // число без знакового нулевого байта
+    private static byte[] unsignedBytes(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            return Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return bytes;
+    }
+    
+    // ===== кодирование ASN.1 =====
+    
+    private static byte[] integer(BigInteger value) {
+        return tlv(INTEGER, value.toByteArray());
+    }
+    
+    private static byte[] sequence(byte[]... parts) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            content.writeBytes(part);
+        }
+        return tlv(SEQUENCE, content.toByteArray());
+    }
+    
+    // тег, длина (короткая или длинная форма), содержимое
+    private static byte[] tlv(int tag, byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 6);
+        out.write(tag);
+        int length = content.length;
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int lengthBytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+            out.write(0x80 | lengthBytes);
+            for (int i = lengthBytes - 1; i >= 0; i--) {
+                out.write(length >>> (i * 8));
+            }
+        }
+        out.writeBytes(content);
+        return out.toByteArray();
+    }
+    
+    // ===== разбор ASN.1 =====
+    
+    private static class DerReader {
+        private final byte[] data;
+        private int position;
+        private final int end;
+        
+        DerReader(byte[] data) {
+            this(data, 0, data.length);
+        }
+        
+        private DerReader(byte[] data, int start, int end) {
+            this.data = data;
+            this.position = start;
+            this.end = end;
+        }
+        
+        boolean hasMore() {
+            return position < end;
+        }
+        
+        int peekTag() throws IOException {
+            if (position >= end) {
+                throw new IOException("Неожиданный конец DER");
+            }
+            return data[position] & 0xFF;
+        }
+        
+        // содержимое следующего элемента с заданным тегом
+        byte[] read(int tag) throws IOException {
+            int length = header(tag);
+            byte[] content = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return content;
+        }
+        
+        BigInteger readInteger() throws IOException {
+            byte[] content = read(INTEGER);
+            if (content.length == 0) {
+                throw new IOException("Пустое число в DER");
+            }
+            return new BigInteger(content);
+        }
+        
+        // вход внутрь составного элемента
+        DerReader enter(int tag) throws IOException {
+            int length = header(tag);
+            DerReader inner = new DerReader(data, position, position + length);
+            position += length;
+            return inner;
+        }
+        
+        void skip() throws IOException {
+            read(peekTag());
+        }
+        
+        private int header(int tag) throws IOException {
+            if (peekTag() != tag) {
+                throw new IOException("Ожидался тег DER 0x" + Integer.toHexString(tag));
+            }
+            position++;
+            
+            if (position >= end) {
+                throw new IOException("Неожиданный конец DER");
+            }
+            int length = data[position++] & 0xFF;
+            if (length >= 0x80) {
+                int lengthBytes = length & 0x7F;
+                if (lengthBytes > 4) {
+                    throw new IOException("Слишком длинный элемент DER");
+                }
+                if (lengthBytes > end - position) {
+                    throw new IOException("Неожиданный конец DER");
+                }
+                length = 0;
+                for (int i = 0; i < lengthBytes; i++) {
+                    length = (length << 8) | (data[position++] & 0xFF);
+                }
+            }
+            if (length < 0 || length > end - position) {
+                throw new IOException("Длина элемента DER выходит за границы");
+            }
+            return length;
+        }
+    }
+}
\ No newline at end of file
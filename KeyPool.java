@@ -0,0 +1,219 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// пул заранее сгенерированных пар ключей для каждого размера
+// взятая пара тут же заказывается заново в фоновом потоке с низким приоритетом
+public class KeyPool {
+    
+    private final int targetSize;
+    private final Map<Integer, BlockingQueue<RSA.KeyPair>> ready = new ConcurrentHashMap<>();
+    
+    // сколько пар каждого размера уже заказано, но еще не готово
+    private final Map<Integer, AtomicInteger> pending = new ConcurrentHashMap<>();
+    
+    private final ExecutorService refiller = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "rsa-key-pool");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    
+    // метрики
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refills = new AtomicLong();
+    private final AtomicLong totalRefillLagNanos = new AtomicLong();
+    private final AtomicLong maxRefillLagNanos = new AtomicLong();
+    
+    // targetSize - сколько готовых пар держать для каждого размера ключа
+    public KeyPool(int targetSize, int... keySizes) {
+        this.targetSize = targetSize;
+        for (int keySize : keySizes) {
+            queue(keySize);
+        }
+    }
+    
+    // запуск фонового заполнения до нужного количества
+    public KeyPool start() {
+        for (Integer keySize : ready.keySet()) {
+            int missing = targetSize - ready.get(keySize).size() - pending.get(keySize).get();
+            for (int i = 0; i < missing; i++) {
+                scheduleRefill(keySize);
+            }
+        }
+        return this;
+    }
+    
+    // готовая пара или null, если пул пуст (тогда ключ генерируется синхронно вызывающим)
+    public RSA.KeyPair poll(int keySize) {
+        RSA.KeyPair keys = queue(keySize).poll();
+        if (keys != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        
+        // взамен взятой (или недостающей) заказываем новую
+        if (queue(keySize).size() + pending.get(keySize).get() < targetSize) {
+            scheduleRefill(keySize);
+        }
+        return keys;
+    }
+    
+    public int available(int keySize) {
+        return queue(keySize).size();
+    }
+    
+    public void shutdown() {
+        refiller.shutdownNow();
+    }
+    
+    private BlockingQueue<RSA.KeyPair> queue(int keySize) {
+        pending.computeIfAbsent(keySize, k -> new AtomicInteger());
+        return ready.computeIfAbsent(keySize, k -> new LinkedBlockingQueue<>());
+    }
+    
+    private void scheduleRefill(int keySize) {
+        long requested = System.nanoTime();
+        pending.get(keySize).incrementAndGet();
+        
+        refiller.execute(() -> {
+            try {
+                // поиск простых в этом же потоке, а не в общем пуле RSA - иначе низкий приоритет ничего не дает
+                queue(keySize).add(RSA.generateFreshKeyPairInCurrentThread(keySize));
+                refills.incrementAndGet();
+                
+                // задержка пополнения: от заказа до появления пары в пуле
+                long lag = System.nanoTime() - requested;
+                totalRefillLagNanos.addAndGet(lag);
+                maxRefillLagNanos.accumulateAndGet(lag, Math::max);
+            } finally {
+                pending.get(keySize).decrementAndGet();
+            }
+        });
+    }
+    
+    // сохранение готовых пар на диск, чтобы после перезапуска не генерировать заново
+    // сохраненные пары забираются из пула (шаг остановки): иначе пара, выданная после save,
+    // осталась бы в файле и после перезапуска досталась бы кому-то еще
+    // в файле лежат закрытые ключи - он создается только для владельца (как файл токена демона),
+    // пишется во временный файл и переименовывается, чтобы сбой не оставил обрезанный пул
+    public void save(String poolFile) throws IOException {
+        Map<Integer, List<RSA.KeyPair>> drained = new HashMap<>();
+        for (Map.Entry<Integer, BlockingQueue<RSA.KeyPair>> entry : ready.entrySet()) {
+            List<RSA.KeyPair> pairs = new ArrayList<>();
+            entry.getValue().drainTo(pairs);
+            drained.put(entry.getKey(), pairs);
+        }
+        
+        Path target = Paths.get(poolFile);
+        Path temp = Paths.get(poolFile + ".tmp");
+        try {
+            Files.deleteIfExists(temp);
+            try {
+                Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                Files.createFile(temp);
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                for (Map.Entry<Integer, List<RSA.KeyPair>> entry : drained.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    
+                    // каждая пара - закрытый ключ в компактном формате с префиксом длины
+                    for (RSA.KeyPair keys : entry.getValue()) {
+                        byte[] encoded = KeyFormat.encodeCompact(keys, true);
+                        out.writeInt(encoded.length);
+                        out.write(encoded);
+                    }
+                }
+                // конец списка размеров
+                out.writeInt(0);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // на диск ничего не попало - пары остаются в пуле
+            Files.deleteIfExists(temp);
+            for (Map.Entry<Integer, List<RSA.KeyPair>> entry : drained.entrySet()) {
+                queue(entry.getKey()).addAll(entry.getValue());
+            }
+            throw e;
+        }
+    }
+    
+    // загрузка ранее сохраненных пар (если файла нет - пул просто пустой)
+    // файл сначала атомарно переименовывается и после чтения удаляется: пара, выданная из памяти,
+    // не должна достаться кому-то еще после перезапуска или другому процессу с тем же файлом
+    // (невыданные пары снова попадут на диск при следующем save)
+    public void load(String poolFile) throws IOException, ClassNotFoundException {
+        Path source = Paths.get(poolFile);
+        Path claimed = Paths.get(poolFile + ".loading");
+        try {
+            Files.move(source, claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(claimed)))) {
+            int keySize;
+            while ((keySize = in.readInt()) != 0) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] encoded = new byte[in.readInt()];
+                    in.readFully(encoded);
+                    queue(keySize).add(KeyFormat.decode(encoded, true));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(claimed);
+        }
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    // среднее время пополнения в миллисекундах
+    public double getAverageRefillLagMillis() {
+        long count = refills.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalRefillLagNanos.get()) / 1000.0 / count;
+    }
+    
+    public double getMaxRefillLagMillis() {
+        return TimeUnit.NANOSECONDS.toMicros(maxRefillLagNanos.get()) / 1000.0;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Пул ключей: попаданий " + hits.get() + ", промахов " + misses.get()
+                + String.format(", пополнение ср. %.1f мс, макс. %.1f мс", 
+                        getAverageRefillLagMillis(), getMaxRefillLagMillis()));
+        for (Map.Entry<Integer, BlockingQueue<RSA.KeyPair>> entry : ready.entrySet()) {
+            sb.append(", ").append(entry.getKey()).append(" бит: ").append(entry.getValue().size());
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+// подпись по кускам с сохраненным списком хэшей кусков:
+// - проверка только читаемых диапазонов файла, без хэширования всего файла
+// - переподпись после дозаписи в конец с пересчетом только измененных кусков
+public class MerkleSignature {
+    
+    private final SignatureFile signature;
+    
+    // сначала проверяем сам список хэшей: корень из него должен совпасть с подписанным
+    // после этого каждый кусок можно проверять независимо
+    public MerkleSignature(SignatureFile signature, RSA.KeyPair publicKey) {
+        if (signature.mode != SignatureFile.MODE_TREE || signature.chunkHashes == null) {
+            throw new IllegalArgumentException("В подписи нет списка хэшей кусков");
+        }
+        if (publicKey.publicExponent == null) {
+            throw new IllegalArgumentException("Для проверки нужна открытая экспонента ключа");
+        }
+        
+        BigInteger root = new BigInteger(1, TreeHash.signedDigest(TreeHash.root(signature.chunkHashes),
+                signature.chunkSize, signature.fileSize));
+        BigInteger recovered = signature.signature.modPow(publicKey.publicExponent, publicKey.modulus);
+        if (!root.mod(publicKey.modulus).equals(recovered)) {
+            throw new SecurityException("Подпись списка хэшей кусков неверна");
+        }
+        this.signature = signature;
+    }
+    
+    public static MerkleSignature load(String inputFile, RSA.KeyPair publicKey) throws IOException {
+        return new MerkleSignature(SignatureFile.read(inputFile + ".sig"), publicKey);
+    }
+    
+    public int getChunkSize() {
+        return signature.chunkSize;
+    }
+    
+    public long getFileSize() {
+        return signature.fileSize;
+    }
+    
+    // проверка одного куска, уже прочитанного в память (например, при потоковом чтении)
+    public boolean verifyChunk(int index, byte[] data, int offset, int length) {
+        if (index < 0 || index >= signature.chunkHashes.length || length != chunkLength(index)) {
+            return false;
+        }
+        return MessageDigest.isEqual(signature.chunkHashes[index], TreeHash.leafHash(data, offset, length));
+    }
+    
+    // проверка диапазона файла: хэшируются только куски, которые его покрывают
+    public boolean verifyRange(String inputFile, long offset, long length) throws IOException {
+        // length > fileSize - offset, а не offset + length > fileSize: сумма может переполниться
+        if (offset < 0 || length < 0 || offset > signature.fileSize || length > signature.fileSize - offset) {
+            return false;
+        }
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ)) {
+            if (channel.size() != signature.fileSize) {
+                return false;
+            }
+            // пустой диапазон (в том числе в самом конце файла) не покрывает ни одного куска
+            if (length == 0) {
+                return true;
+            }
+            
+            int first = (int) (offset / signature.chunkSize);
+            int last = (int) (Math.max(offset, offset + length - 1) / signature.chunkSize);
+            for (int i = first; i <= last; i++) {
+                byte[] actual = TreeHash.leafHash(channel, (long) i * signature.chunkSize, chunkLength(i));
+                if (!MessageDigest.isEqual(signature.chunkHashes[i], actual)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    // переподпись файла, к которому только дописывали в конец:
+    // куски до последнего (возможно неполного) берутся из старой подписи, хэшируются только хвост и новые куски
+    // старая подпись при этом проверяется открытой частью ключа
+    public static String resignAppended(String inputFile, RSA.KeyPair keys) throws Exception {
+        MerkleSignature old = load(inputFile, withPublicExponent(keys));
+        SignatureFile previous = old.signature;
+        int chunkSize = previous.chunkSize;
+        
+        Path path = Paths.get(inputFile);
+        long fileSize = Files.size(path);
+        if (fileSize < previous.fileSize) {
+            throw new IllegalStateException("Файл стал короче - это не дозапись, нужна полная переподпись");
+        }
+        
+        int chunks = (int) SignatureFile.expectedChunks(fileSize, chunkSize);
+        byte[][] chunkHashes = Arrays.copyOf(previous.chunkHashes, chunks);
+        
+        // последний старый кусок мог быть неполным - его тоже пересчитываем
+        int firstChanged = previous.fileSize % chunkSize == 0 && previous.fileSize > 0
+                ? previous.chunkHashes.length
+                : previous.chunkHashes.length - 1;
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = firstChanged; i < chunks; i++) {
+                long position = (long) i * chunkSize;
+                chunkHashes[i] = TreeHash.leafHash(channel, position, Math.min(chunkSize, fileSize - position));
+            }
+        }
+        
+        BigInteger root = new BigInteger(1, TreeHash.signedDigest(TreeHash.root(chunkHashes), chunkSize, fileSize));
+        BigInteger signature = RSA.signHash(root, keys);
+        
+        String signatureFile = inputFile + ".sig";
+        new SignatureFile(SignatureFile.MODE_TREE, chunkSize, signature, fileSize, chunkHashes)
+                .write(signatureFile);
+        RSA.log("Подпись обновлена, пересчитано кусков: " + (chunks - firstChanged));
+        return signatureFile;
+    }
+    
+    // в старых файлах закрытого ключа открытой экспоненты нет - восстанавливаем ее по p и q
+    // (d = e^(-1) mod phi, значит e = d^(-1) mod phi)
+    private static RSA.KeyPair withPublicExponent(RSA.KeyPair keys) {
+        if (keys.publicExponent != null) {
+            return keys;
+        }
+        if (keys.primeP == null || keys.primeQ == null) {
+            throw new IllegalArgumentException(
+                    "В закрытом ключе нет открытой экспоненты и простых p, q - пересохраните ключ в новом формате");
+        }
+        BigInteger phi = keys.primeP.subtract(BigInteger.ONE).multiply(keys.primeQ.subtract(BigInteger.ONE));
+        return new RSA.KeyPair(keys.modulus, keys.privateExponent.modInverse(phi), null);
+    }
+    
+    // длина куска с номером index (последний может быть короче)
+    private long chunkLength(int index) {
+        long position = (long) index * signature.chunkSize;
+        return Math.min(signature.chunkSize, signature.fileSize - position);
+    }
+}
\ No newline at end of file
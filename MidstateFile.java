@@ -0,0 +1,86 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// файл промежуточного состояния SHA-256 рядом с подписью (файл.sig.state)
+// нужен для файлов, которые только растут (журналы): при следующей подписи хэшируются только новые байты
+// формат: "RSMS", версия, размер захэшированной части, SHA-256 ее последних байт, состояние SHA256
+public class MidstateFile {
+    
+    private static final int MAGIC = 0x52534d53; // "RSMS"
+    private static final int VERSION = 1;
+    
+    // сколько байт перед границей перечитывается, чтобы убедиться, что старую часть не меняли
+    private static final int CHECK_SIZE = 64 * 1024;
+    
+    public final long fileSize;     // сколько байт файла уже учтено в состоянии
+    public final byte[] tailCheck;  // SHA-256 последних CHECK_SIZE байт учтенной части
+    public final byte[] state;      // SHA256.exportState()
+    
+    public MidstateFile(long fileSize, byte[] tailCheck, byte[] state) {
+        this.fileSize = fileSize;
+        this.tailCheck = tailCheck;
+        this.state = state;
+    }
+    
+    // состояние после хэширования первых fileSize байт файла
+    public static MidstateFile of(FileChannel channel, long fileSize, byte[] state) throws IOException {
+        return new MidstateFile(fileSize, tailCheck(channel, fileSize), state);
+    }
+    
+    // можно ли продолжить с этого состояния: файл не короче и конец учтенной части не изменился
+    // (полностью старая часть не перечитывается - для этого файл и должен быть только дописываемым)
+    public boolean matches(FileChannel channel) throws IOException {
+        return channel.size() >= fileSize
+                && Arrays.equals(tailCheck, tailCheck(channel, fileSize));
+    }
+    
+    private static byte[] tailCheck(FileChannel channel, long end) throws IOException {
+        long start = Math.max(0, end - CHECK_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) == -1) {
+                throw new EOFException("Файл короче сохраненного состояния");
+            }
+        }
+        buffer.flip();
+        SHA256 sha = new SHA256();
+        sha.update(buffer);
+        return sha.digest();
+    }
+    
+    public void write(String filename) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            dos.writeInt(MAGIC);
+            dos.writeByte(VERSION);
+            dos.writeLong(fileSize);
+            dos.write(tailCheck);
+            dos.write(state);
+        }
+    }
+    
+    public static MidstateFile read(String filename) throws IOException {
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException("Не файл состояния SHA-256: " + filename);
+            }
+            int version = dis.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия файла состояния: " + version);
+            }
+            long fileSize = dis.readLong();
+            byte[] tailCheck = new byte[32];
+            dis.readFully(tailCheck);
+            byte[] state = new byte[SHA256.STATE_SIZE];
+            dis.readFully(state);
+            // число байт в состоянии (после 8 слов) должно совпасть с сохраненным размером файла
+            if (ByteBuffer.wrap(state).getLong(32) != fileSize) {
+                throw new IOException("Состояние SHA-256 не соответствует размеру файла: " + filename);
+            }
+            return new MidstateFile(fileSize, tailCheck, state);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,220 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+// возведение в степень по модулю в форме Монтгомери на массивах int (32-битные слова, младшее первым)
+// контекст на модуль считается один раз (R^2 mod n, n' = -n^(-1) mod 2^32),
+// рабочие массивы свои у каждого потока - в цикле возведения ничего не выделяется
+// для e = 65537 используется цепочка из 16 возведений в квадрат и одного умножения,
+// для закрытых экспонент - метод фиксированного окна
+public class MontgomeryEngine {
+    
+    private static final long MASK = 0xFFFFFFFFL;
+    private static final int WINDOW_BITS = 5;
+    private static final BigInteger E_65537 = BigInteger.valueOf(65537);
+    
+    private final BigInteger modulus;
+    private final int[] n;          // модуль
+    private final int k;            // длина в словах
+    private final int nPrime;       // -n^(-1) mod 2^32
+    private final int[] r2;         // R^2 mod n, R = 2^(32k)
+    
+    // рабочие массивы потока для данного модуля
+    private final ThreadLocal<Workspace> workspace;
+    
+    private class Workspace {
+        final int[] t = new int[k + 2];             // промежуточный результат умножения
+        final int[] acc = new int[k];               // накопитель
+        final int[] base = new int[k];              // основание (обычная форма)
+        final int[] one = new int[k];               // единица для выхода из формы Монтгомери
+        final int[][] table = new int[1 << WINDOW_BITS][k];   // base^i в форме Монтгомери
+        
+        Workspace() {
+            one[0] = 1;
+        }
+    }
+    
+    public MontgomeryEngine(BigInteger modulus) {
+        if (!modulus.testBit(0) || modulus.signum() <= 0) {
+            throw new IllegalArgumentException("Модуль для Монтгомери должен быть положительным и нечетным");
+        }
+        this.modulus = modulus;
+        this.k = (modulus.bitLength() + 31) / 32;
+        this.n = toLimbs(modulus, k);
+        this.nPrime = -inverse32(n[0]);
+        this.r2 = toLimbs(BigInteger.ONE.shiftLeft(64 * k).mod(modulus), k);
+        this.workspace = ThreadLocal.withInitial(Workspace::new);
+    }
+    
+    public BigInteger getModulus() {
+        return modulus;
+    }
+    
+    // base^exponent mod n
+    public BigInteger modPow(BigInteger base, BigInteger exponent) {
+        if (exponent.equals(E_65537)) {
+            return modPow65537(base);
+        }
+        if (exponent.signum() == 0) {
+            return BigInteger.ONE.mod(modulus);
+        }
+        
+        Workspace w = workspace.get();
+        loadBase(base, w);
+        
+        // таблица степеней основания: table[i] = base^i (в форме Монтгомери)
+        int[][] table = w.table;
+        montMul(w.one, r2, table[0], w.t);
+        montMul(w.base, r2, table[1], w.t);
+        for (int i = 2; i < table.length; i++) {
+            montMul(table[i - 1], table[1], table[i], w.t);
+        }
+        
+        // слева направо окнами по WINDOW_BITS бит
+        int bits = exponent.bitLength();
+        int windows = (bits + WINDOW_BITS - 1) / WINDOW_BITS;
+        int[] acc = w.acc;
+        System.arraycopy(table[0], 0, acc, 0, k);
+        
+        for (int win = windows - 1; win >= 0; win--) {
+            if (win != windows - 1) {
+                for (int s = 0; s < WINDOW_BITS; s++) {
+                    montMul(acc, acc, acc, w.t);
+                }
+            }
+            int digit = windowValue(exponent, win * WINDOW_BITS);
+            if (digit != 0) {
+                montMul(acc, table[digit], acc, w.t);
+            }
+        }
+        
+        montMul(acc, w.one, acc, w.t);
+        return fromLimbs(acc);
+    }
+    
+    // base^65537 mod n: x^(2^16) * x
+    public BigInteger modPow65537(BigInteger base) {
+        Workspace w = workspace.get();
+        loadBase(base, w);
+        
+        int[] x = w.table[1];
+        int[] acc = w.acc;
+        montMul(w.base, r2, x, w.t);
+        System.arraycopy(x, 0, acc, 0, k);
+        
+        for (int i = 0; i < 16; i++) {
+            montMul(acc, acc, acc, w.t);
+        }
+        montMul(acc, x, acc, w.t);
+        montMul(acc, w.one, acc, w.t);
+        return fromLimbs(acc);
+    }
+    
+    // основание по модулю n в рабочий массив
+    private void loadBase(BigInteger base, Workspace w) {
+        if (base.signum() < 0 || base.compareTo(modulus) >= 0) {
+            base = base.mod(modulus);
+        }
+        fillLimbs(base, w.base);
+    }
+    
+    // out = a * b * R^(-1) mod n (CIOS); out может совпадать с a или b
+    private void montMul(int[] a, int[] b, int[] out, int[] t) {
+        int k = this.k;
+        int[] n = this.n;
+        Arrays.fill(t, 0);
+        
+        for (int i = 0; i < k; i++) {
+            // t += a * b[i]
+            long bi = b[i] & MASK;
+            long carry = 0;
+            for (int j = 0; j < k; j++) {
+                long sum = (t[j] & MASK) + (a[j] & MASK) * bi + carry;
+                t[j] = (int) sum;
+                carry = sum >>> 32;
+            }
+            long sum = (t[k] & MASK) + carry;
+            t[k] = (int) sum;
+            t[k + 1] = (int) (sum >>> 32);
+            
+            // t = (t + m * n) / 2^32, где m подобрано так, чтобы младшее слово обнулилось
+            long m = (t[0] * nPrime) & MASK;
+            sum = (t[0] & MASK) + m * (n[0] & MASK);
+            carry = sum >>> 32;
+            for (int j = 1; j < k; j++) {
+                sum = (t[j] & MASK) + m * (n[j] & MASK) + carry;
+                t[j - 1] = (int) sum;
+                carry = sum >>> 32;
+            }
+            sum = (t[k] & MASK) + carry;
+            t[k - 1] = (int) sum;
+            t[k] = (int) ((t[k + 1] & MASK) + (sum >>> 32));
+        }
+        
+        // результат < 2n, при необходимости вычитаем n
+        if (t[k] != 0 || compare(t, n, k) >= 0) {
+            long borrow = 0;
+            for (int j = 0; j < k; j++) {
+                long diff = (t[j] & MASK) - (n[j] & MASK) - borrow;
+                out[j] = (int) diff;
+                borrow = (diff >>> 63);
+            }
+        } else {
+            System.arraycopy(t, 0, out, 0, k);
+        }
+    }
+    
+    // сравнение первых k слов
+    private static int compare(int[] a, int[] b, int k) {
+        for (int i = k - 1; i >= 0; i--) {
+            if (a[i] != b[i]) {
+                return Integer.compareUnsigned(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+    
+    // биты [from, from + WINDOW_BITS) экспоненты
+    private static int windowValue(BigInteger exponent, int from) {
+        int value = 0;
+        for (int b = WINDOW_BITS - 1; b >= 0; b--) {
+            value = (value << 1) | (exponent.testBit(from + b) ? 1 : 0);
+        }
+        return value;
+    }
+    
+    // обратный по модулю 2^32 к нечетному x (итерации Ньютона)
+    private static int inverse32(int x) {
+        int inv = x;
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - x * inv;
+        }
+        return inv;
+    }
+    
+    private static int[] toLimbs(BigInteger value, int k) {
+        int[] limbs = new int[k];
+        fillLimbs(value, limbs);
+        return limbs;
+    }
+    
+    private static void fillLimbs(BigInteger value, int[] limbs) {
+        byte[] bytes = value.toByteArray();
+        Arrays.fill(limbs, 0);
+        for (int i = 0; i < bytes.length && i / 4 < limbs.length; i++) {
+            int b = bytes[bytes.length - 1 - i] & 0xFF;
+            limbs[i / 4] |= b << ((i % 4) * 8);
+        }
+    }
+    
+    private static BigInteger fromLimbs(int[] limbs) {
+        byte[] bytes = new byte[limbs.length * 4];
+        for (int i = 0; i < limbs.length; i++) {
+            int limb = limbs[limbs.length - 1 - i];
+            bytes[i * 4] = (byte) (limb >>> 24);
+            bytes[i * 4 + 1] = (byte) (limb >>> 16);
+            bytes[i * 4 + 2] = (byte) (limb >>> 8);
+            bytes[i * 4 + 3] = (byte) limb;
+        }
+        return new BigInteger(1, bytes);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+
+// SHA-256 для многих небольших сообщений сразу: LANES независимых сообщений идут через раунды
+// сжатия одновременно, каждое в своей "полосе" массивов int (переменные раунда хранятся
+// по полосам, цикл по полосам внутри раунда JIT может векторизовать)
+// освободившаяся полоса сразу получает следующее сообщение, поэтому разная длина сообщений не мешает
+public class MultiSHA256 {
+    
+    // число полос (сообщений в одном шаге сжатия)
+    public static final int LANES = 16;
+    
+    // рабочие массивы потока
+    private static final ThreadLocal<MultiSHA256> LOCAL = ThreadLocal.withInitial(MultiSHA256::new);
+    
+    // состояние хэша: state[слово][полоса]
+    private final int[][] state = new int[8][LANES];
+    
+    // переменные раунда a..h, у каждой свой массив по полосам
+    private final int[][] vars = new int[8][LANES];
+    
+    // расписание сообщения: W[номер слова][полоса]
+    private final int[][] W = new int[64][LANES];
+    
+    // какое сообщение в полосе (-1 - полоса пустая) и какой его блок следующий
+    private final int[] laneMessage = new int[LANES];
+    private final long[] laneBlock = new long[LANES];
+    private final long[] laneBlocks = new long[LANES];
+    
+    // блок с дополнением для хвоста сообщения
+    private final byte[] tail = new byte[64];
+    
+    // хэши всех сообщений; результат в том же порядке
+    public static byte[][] hash(byte[][] messages) {
+        return LOCAL.get().hashAll(messages);
+    }
+    
+    private byte[][] hashAll(byte[][] messages) {
+        byte[][] digests = new byte[messages.length][];
+        int next = 0;
+        int active = 0;
+        for (int lane = 0; lane < LANES; lane++) {
+            next = assign(lane, messages, next);
+            if (laneMessage[lane] >= 0) {
+                active++;
+            }
+        }
+        
+        while (active > 0) {
+            for (int lane = 0; lane < LANES; lane++) {
+                loadBlock(lane, messages);
+            }
+            compress();
+            
+            // закончившие сообщения отдают хэш и получают следующее
+            for (int lane = 0; lane < LANES; lane++) {
+                int message = laneMessage[lane];
+                if (message >= 0 && ++laneBlock[lane] == laneBlocks[lane]) {
+                    digests[message] = digest(lane);
+                    next = assign(lane, messages, next);
+                    if (laneMessage[lane] < 0) {
+                        active--;
+                    }
+                }
+            }
+        }
+        return digests;
+    }
+    
+    // ставит в полосу следующее сообщение (или помечает ее пустой)
+    private int assign(int lane, byte[][] messages, int next) {
+        if (next >= messages.length) {
+            laneMessage[lane] = -1;
+            return next;
+        }
+        laneMessage[lane] = next;
+        laneBlock[lane] = 0;
+        // длина + 0x80 + 8 байт длины, округленные до блока
+        laneBlocks[lane] = (messages[next].length + 9 + 63) / 64;
+        for (int i = 0; i < 8; i++) {
+            state[i][lane] = SHA256.INITIAL_HASH[i];
+        }
+        return next + 1;
+    }
+    
+    // первые 16 слов расписания полосы: из сообщения или из хвоста с дополнением
+    private void loadBlock(int lane, byte[][] messages) {
+        int message = laneMessage[lane];
+        if (message < 0) {
+            // пустая полоса считает что угодно, результат не используется
+            return;
+        }
+        
+        byte[] data = messages[message];
+        long offset = laneBlock[lane] * 64;
+        byte[] source;
+        int from;
+        if (offset + 64 <= data.length) {
+            source = data;
+            from = (int) offset;
+        } else {
+            // хвост: остаток данных, 0x80, нули и длина в битах в последнем блоке
+            Arrays.fill(tail, (byte) 0);
+            int remaining = (int) Math.max(0, data.length - offset);
+            System.arraycopy(data, (int) Math.min(offset, data.length), tail, 0, remaining);
+            if (offset <= data.length) {
+                tail[remaining] = (byte) 0x80;
+            }
+            if (laneBlock[lane] == laneBlocks[lane] - 1) {
+                long bitLength = (long) data.length * 8;
+                for (int i = 0; i < 8; i++) {
+                    tail[56 + i] = (byte) (bitLength >>> (56 - i * 8));
+                }
+            }
+            source = tail;
+            from = 0;
+        }
+        
+        for (int i = 0; i < 16; i++) {
+            int p = from + i * 4;
+            W[i][lane] = ((source[p] & 0xFF) << 24) | ((source[p + 1] & 0xFF) << 16)
+                    | ((source[p + 2] & 0xFF) << 8) | (source[p + 3] & 0xFF);
+        }
+    }
+    
+    // один шаг сжатия во всех полосах сразу
+    private void compress() {
+        int[][] W = this.W;
+        for (int i = 16; i < 64; i++) {
+            int[] w = W[i];
+            int[] w2 = W[i - 2];
+            int[] w7 = W[i - 7];
+            int[] w15 = W[i - 15];
+            int[] w16 = W[i - 16];
+            for (int l = 0; l < LANES; l++) {
+                w[l] = SHA256.sigma1(w2[l]) + w7[l] + SHA256.sigma0(w15[l]) + w16[l];
+            }
+        }
+        
+        int[] a = vars[0];
+        int[] b = vars[1];
+        int[] c = vars[2];
+        int[] d = vars[3];
+        int[] e = vars[4];
+        int[] f = vars[5];
+        int[] g = vars[6];
+        int[] h = vars[7];
+        for (int i = 0; i < 8; i++) {
+            System.arraycopy(state[i], 0, vars[i], 0, LANES);
+        }
+        
+        // 64 раунда; вместо сдвига значений a..h меняются ссылки на массивы:
+        // новое e пишется на место d, новое a - на место h
+        for (int i = 0; i < 64; i++) {
+            int k = SHA256.K[i];
+            int[] w = W[i];
+            for (int l = 0; l < LANES; l++) {
+                int T1 = h[l] + SHA256.bigSigma1(e[l]) + SHA256.ch(e[l], f[l], g[l]) + k + w[l];
+                int T2 = SHA256.bigSigma0(a[l]) + SHA256.maj(a[l], b[l], c[l]);
+                d[l] += T1;
+                h[l] = T1 + T2;
+            }
+            
+            int[] t = h;
+            h = g;
+            g = f;
+            f = e;
+            e = d;
+            d = c;
+            c = b;
+            b = a;
+            a = t;
+        }
+        
+        // за 64 раунда ссылки вернулись на свои места (64 делится на 8)
+        for (int i = 0; i < 8; i++) {
+            int[] s = state[i];
+            int[] v = vars[i];
+            for (int l = 0; l < LANES; l++) {
+                s[l] += v[l];
+            }
+        }
+    }
+    
+    private byte[] digest(int lane) {
+        byte[] out = new byte[32];
+        for (int i = 0; i < 8; i++) {
+            int word = state[i][lane];
+            out[i * 4] = (byte) (word >>> 24);
+            out[i * 4 + 1] = (byte) (word >>> 16);
+            out[i * 4 + 2] = (byte) (word >>> 8);
+            out[i * 4 + 3] = (byte) word;
+        }
+        return out;
+    }
+}
\ No newline at end of file
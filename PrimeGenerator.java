@@ -0,0 +1,184 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+// генератор больших простых чисел:
+// случайная нечетная стартовая точка -> решето по окну кандидатов -> тест Миллера-Рабина только для выживших
+public class PrimeGenerator {
+    
+    // сколько нечетных кандидатов (start, start + 2, ...) просеивается за раз
+    private static final int WINDOW = 4096;
+    
+    // таблица малых простых для решета
+    private static final int SIEVE_LIMIT = 20000;
+    private static final int[] SMALL_PRIMES = smallPrimes(SIEVE_LIMIT);
+    
+    private static final BigInteger TWO = BigInteger.TWO;
+    
+    private final Random random;
+    
+    // random можно передать с фиксированным зерном, тогда замеры воспроизводимы
+    public PrimeGenerator(Random random) {
+        this.random = random;
+    }
+    
+    public BigInteger generate(int bitLength) {
+        return generate(bitLength, () -> false);
+    }
+    
+    // поиск простого заданной длины; если cancelled вернул true - возвращаем null
+    public BigInteger generate(int bitLength, BooleanSupplier cancelled) {
+        int rounds = millerRabinRounds(bitLength);
+        
+        while (!cancelled.getAsBoolean()) {
+            // случайное нечетное число заданной длины
+            // два старших бита выставлены, чтобы произведение двух таких простых было ровно 2 * bitLength бит
+            BigInteger start = new BigInteger(bitLength, random)
+                    .setBit(bitLength - 1).setBit(bitLength - 2).setBit(0);
+            
+            // остатки стартовой точки по каждому малому простому
+            int[] residues = new int[SMALL_PRIMES.length];
+            for (int i = 0; i < SMALL_PRIMES.length; i++) {
+                residues[i] = start.mod(BigInteger.valueOf(SMALL_PRIMES[i])).intValue();
+            }
+            
+            BigInteger base = start;
+            boolean[] composite = new boolean[WINDOW];
+            
+            // идем окнами, пока не вышли за нужную длину
+            while (base.bitLength() == bitLength && !cancelled.getAsBoolean()) {
+                sieve(residues, composite);
+                
+                for (int k = 0; k < WINDOW; k++) {
+                    if (composite[k]) {
+                        continue;
+                    }
+                    BigInteger candidate = base.add(BigInteger.valueOf(2L * k));
+                    if (candidate.bitLength() != bitLength) {
+                        break;
+                    }
+                    if (isProbablePrime(candidate, rounds)) {
+                        return candidate;
+                    }
+                    if (cancelled.getAsBoolean()) {
+                        return null;
+                    }
+                }
+                
+                // сдвигаем окно: остатки обновляются сложением, без деления большого числа
+                for (int i = 0; i < SMALL_PRIMES.length; i++) {
+                    residues[i] = (int) ((residues[i] + 2L * WINDOW) % SMALL_PRIMES[i]);
+                }
+                base = base.add(BigInteger.valueOf(2L * WINDOW));
+            }
+        }
+        return null;
+    }
+    
+    // composite[k] = true, если base + 2k делится на какое-то малое простое
+    private static void sieve(int[] residues, boolean[] composite) {
+        Arrays.fill(composite, false);
+        
+        for (int i = 0; i < SMALL_PRIMES.length; i++) {
+            int p = SMALL_PRIMES[i];
+            
+            // ищем первое k, при котором r + 2k = 0 (mod p): k = (p - r) * 2^(-1) mod p
+            int r = residues[i];
+            int k = (r == 0) ? 0 : (int) (((long) (p - r) * ((p + 1) / 2)) % p);
+            
+            for (; k < WINDOW; k += p) {
+                composite[k] = true;
+            }
+        }
+    }
+    
+    // число раундов Миллера-Рабина для вероятности ошибки не выше 2^-100 (FIPS 186-4, табл. C.2/C.3)
+    public static int millerRabinRounds(int bitLength) {
+        if (bitLength >= 1536) {
+            return 3;
+        }
+        if (bitLength >= 1024) {
+            return 4;
+        }
+        if (bitLength >= 512) {
+            return 7;
+        }
+        // для коротких чисел таблица не рассчитана, берем с запасом
+        return 40;
+    }
+    
+    // тест Миллера-Рабина с заданным числом раундов (первое основание 2, остальные случайные)
+    public boolean isProbablePrime(BigInteger n, int rounds) {
+        // 2 и 3 простые, остальные четные и меньшие - нет
+        if (n.compareTo(BigInteger.valueOf(4)) < 0) {
+            return n.compareTo(BigInteger.ONE) > 0;
+        }
+        if (!n.testBit(0)) {
+            return false;
+        }
+        
+        BigInteger nMinusOne = n.subtract(BigInteger.ONE);
+        
+        // n - 1 = 2^s * d, d нечетное
+        int s = nMinusOne.getLowestSetBit();
+        BigInteger d = nMinusOne.shiftRight(s);
+        
+        for (int round = 0; round < rounds; round++) {
+            BigInteger a = (round == 0) ? TWO : randomBase(n);
+            BigInteger x = a.modPow(d, n);
+            
+            if (x.equals(BigInteger.ONE) || x.equals(nMinusOne)) {
+                continue;
+            }
+            
+            boolean passed = false;
+            for (int j = 1; j < s; j++) {
+                x = x.multiply(x).mod(n);
+                if (x.equals(nMinusOne)) {
+                    passed = true;
+                    break;
+                }
+                if (x.equals(BigInteger.ONE)) {
+                    return false;
+                }
+            }
+            if (!passed) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // случайное основание из [2, n - 2]
+    private BigInteger randomBase(BigInteger n) {
+        BigInteger a;
+        do {
+            a = new BigInteger(n.bitLength(), random);
+        } while (a.compareTo(TWO) < 0 || a.compareTo(n.subtract(TWO)) > 0);
+        return a;
+    }
+    
+    // нечетные простые меньше limit (решето Эратосфена)
+    private static int[] smallPrimes(int limit) {
+        boolean[] composite = new boolean[limit];
+        int count = 0;
+        for (int i = 3; i < limit; i += 2) {
+            if (!composite[i]) {
+                count++;
+                for (long j = (long) i * i; j < limit; j += 2L * i) {
+                    composite[(int) j] = true;
+                }
+            }
+        }
+        
+        int[] primes = new int[count];
+        int index = 0;
+        for (int i = 3; i < limit; i += 2) {
+            if (!composite[i]) {
+                primes[index++] = i;
+            }
+        }
+        return primes;
+    }
+}
\ No newline at end of file
@@ -1,14 +1,66 @@
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 // основной код (генерация ключей, сам алгоритм и подпись)
 public class RSA {
     
     private static final SecureRandom random = new SecureRandom();
-    private static final int CERTAINTY = 100; // вер-ть простоты для теста Миллера-Рабина
+    private static final int HASH_CHUNK_SIZE = 64 * 1024; // размер куска при чтении файла для хэша
+    private static final int DIRECT_BUFFER_SIZE = 1024 * 1024; // размер direct-буфера для чтения
+    private static final long MAP_WINDOW_SIZE = 1L << 30; // окно отображения (больше 2 ГБ целиком не отобразить)
+    private static final int SMALL_FILE_SIZE = 4096; // такие файлы в пакетах хэшируются вместе через MultiSHA256
+    private static final int MULTI_HASH_MIN_SIZE = 1024; // файлы меньше быстрее хэшировать по одному (RSABenchmark)
+    
+    // потоки для параллельного поиска простых (демоны, чтобы не держать JVM)
+    private static final ExecutorService primeSearch = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "rsa-prime-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // метрики операций (по умолчанию ничего не собираем)
+    private static volatile RSAMetrics metrics = RSAMetrics.NOOP;
+    
+    // вывод диагностики в консоль; отключается setVerbose(false) или -Drsa.verbose=false
+    private static volatile boolean verbose = !"false".equals(System.getProperty("rsa.verbose"));
+    
+    // возведение в степень через MontgomeryEngine вместо BigInteger.modPow
+    // (по умолчанию выключено: на HotSpot modPow использует встроенные интринсики);
+    // включается setMontgomery(true) или -Drsa.montgomery=true
+    private static volatile boolean montgomery = Boolean.getBoolean("rsa.montgomery");
+    
+    // пакетное хэширование небольших файлов через MultiSHA256
+    // (по умолчанию выключено: выигрыш у обычного SHA256 есть только на части машин и только
+    // для групп файлов 1-4 КБ, см. sha256.multi / sha256.single в RSABenchmark);
+    // включается setMultiHash(true) или -Drsa.multihash=true
+    private static volatile boolean multiHash = Boolean.getBoolean("rsa.multihash");
+    
+    // у каждого потока свой переиспользуемый direct-буфер
+    private static final ThreadLocal<ByteBuffer> directBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+    
+    // способ чтения файла при подсчете хэша
+    public enum HashMode {
+        STREAM,  // обычный поток кусками в массив в куче
+        MAPPED,  // отображение файла в память через FileChannel.map
+        DIRECT   // чтение канала в переиспользуемый direct ByteBuffer
+    }
     
     // хранение ключей
     public static class KeyPair {
@@ -16,27 +68,165 @@ public class RSA {
         public BigInteger publicExponent;   // e
         public BigInteger privateExponent;  // d
         
+        // параметры для китайской теоремы об остатках (null у открытого ключа и у старых файлов)
+        public BigInteger primeP;           // p
+        public BigInteger primeQ;           // q
+        public BigInteger exponentP;        // dP = d mod (p - 1)
+        public BigInteger exponentQ;        // dQ = d mod (q - 1)
+        public BigInteger crtCoefficient;   // qInv = q^(-1) mod p
+        
         public KeyPair(BigInteger n, BigInteger e, BigInteger d) {
             this.modulus = n;
             this.publicExponent = e;
             this.privateExponent = d;
         }
+        
+        public KeyPair(BigInteger n, BigInteger e, BigInteger d, BigInteger p, BigInteger q) {
+            this(n, e, d);
+            this.primeP = p;
+            this.primeQ = q;
+            this.exponentP = d.mod(p.subtract(BigInteger.ONE));
+            this.exponentQ = d.mod(q.subtract(BigInteger.ONE));
+            this.crtCoefficient = q.modInverse(p);
+        }
+        
+        public boolean hasCrt() {
+            return primeP != null && primeQ != null && exponentP != null
+                    && exponentQ != null && crtCoefficient != null;
+        }
+        
+        // отпечаток ключа: SHA-256 от открытой части в компактном формате (считается один раз)
+        private volatile byte[] fingerprint;
+        
+        public byte[] fingerprint() {
+            byte[] result = fingerprint;
+            if (result == null) {
+                result = SHA256.hash(KeyFormat.encodeCompact(this, false));
+                fingerprint = result;
+            }
+            return result;
+        }
+        
+        // контексты Монтгомери для n, p и q (создаются при первом использовании)
+        private volatile MontgomeryEngine engineN;
+        private volatile MontgomeryEngine engineP;
+        private volatile MontgomeryEngine engineQ;
+        
+        MontgomeryEngine engineN() {
+            MontgomeryEngine engine = engineN;
+            if (engine == null) {
+                engine = new MontgomeryEngine(modulus);
+                engineN = engine;
+            }
+            return engine;
+        }
+        
+        MontgomeryEngine engineP() {
+            MontgomeryEngine engine = engineP;
+            if (engine == null) {
+                engine = new MontgomeryEngine(primeP);
+                engineP = engine;
+            }
+            return engine;
+        }
+        
+        MontgomeryEngine engineQ() {
+            MontgomeryEngine engine = engineQ;
+            if (engine == null) {
+                engine = new MontgomeryEngine(primeQ);
+                engineQ = engine;
+            }
+            return engine;
+        }
     }
     
-    // сам алгоритм генерации по описанному в теории
+    public static void setMetrics(RSAMetrics newMetrics) {
+        metrics = newMetrics == null ? RSAMetrics.NOOP : newMetrics;
+    }
+    
+    public static void setVerbose(boolean enabled) {
+        verbose = enabled;
+    }
+    
+    public static void setMontgomery(boolean enabled) {
+        montgomery = enabled;
+    }
+    
+    public static void setMultiHash(boolean enabled) {
+        multiHash = enabled;
+    }
+    
+    // диагностика в консоль
+    public static void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+    
+    // для дорогих сообщений (hex больших чисел) - строка собирается, только если вывод включен
+    public static void log(Supplier<String> message) {
+        if (verbose) {
+            System.out.println(message.get());
+        }
+    }
+    
+    // пул заранее сгенерированных ключей (null - пул не используется)
+    private static volatile KeyPool keyPool;
+    
+    public static void setKeyPool(KeyPool pool) {
+        keyPool = pool;
+    }
+    
+    // пара ключей: из пула, если он подключен и в нем есть готовая, иначе генерируем сразу
     public static KeyPair generateKeyPair(int keySize) {
-        System.out.println("Генерация ключей RSA " + keySize + " бит...");
+        KeyPool pool = keyPool;
+        if (pool != null) {
+            KeyPair keys = pool.poll(keySize);
+            if (keys != null) {
+                return keys;
+            }
+        }
+        return generateFreshKeyPair(keySize);
+    }
+    
+    // сам алгоритм генерации по описанному в теории
+    public static KeyPair generateFreshKeyPair(int keySize) {
+        log("Генерация ключей RSA " + keySize + " бит...");
         
-        // рандомные большие простые числа
+        // рандомные большие простые числа, p и q ищутся одновременно
         int primeSize = keySize / 2;
-        BigInteger p = generateLargePrime(primeSize);
-        BigInteger q = generateLargePrime(primeSize);
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        CompletableFuture<BigInteger> futureP =
+                CompletableFuture.supplyAsync(() -> generateLargePrime(primeSize, workers), primeSearch);
+        BigInteger q = generateLargePrime(primeSize, workers);
+        BigInteger p = futureP.join();
         
         // это чтобы p и q были точно разные
         while (p.equals(q)) {
-            q = generateLargePrime(primeSize);
+            q = generateLargePrime(primeSize, workers);
         }
         
+        return keyPairFromPrimes(p, q);
+    }
+    
+    // то же, но простые ищутся прямо в вызывающем потоке, без общего пула поиска
+    // (для фонового заполнения KeyPool: низкий приоритет его потока действует на саму генерацию)
+    public static KeyPair generateFreshKeyPairInCurrentThread(int keySize) {
+        log("Генерация ключей RSA " + keySize + " бит...");
+        
+        int primeSize = keySize / 2;
+        PrimeGenerator generator = new PrimeGenerator(random);
+        BigInteger p = generator.generate(primeSize);
+        BigInteger q = generator.generate(primeSize);
+        while (p.equals(q)) {
+            q = generator.generate(primeSize);
+        }
+        
+        return keyPairFromPrimes(p, q);
+    }
+    
+    // ключи по найденным простым p и q
+    private static KeyPair keyPairFromPrimes(BigInteger p, BigInteger q) {
         // считаем n по которому будет модуль
         BigInteger n = p.multiply(q);
         
@@ -55,135 +245,693 @@ public class RSA {
         // закрытая экспонента
         BigInteger d = e.modInverse(phi);
         
-        System.out.println("Генерация завершена. Модуль n: " + n.toString(16).substring(0, 64) + "...");
+        log(() -> "Генерация завершена. Модуль n: " + shortHex(n));
         
-        return new KeyPair(n, e, d);
+        // p и q сохраняем для быстрой подписи по КТО
+        return new KeyPair(n, e, d, p, q);
     }
     
     // здесь генерируем простое число большой размерности
-    private static BigInteger generateLargePrime(int bitLength) {
-        BigInteger prime;
-        do {
-            // случайное нечетное число заданной длины
-            prime = new BigInteger(bitLength, CERTAINTY, random);
-        } while (!prime.isProbablePrime(CERTAINTY)); // проверяем тестом Миллера-Рабина на простоту
+    // кандидатов проверяют несколько потоков, первый найденный побеждает, остальные останавливаются
+    private static BigInteger generateLargePrime(int bitLength, int workers) {
+        CompletableFuture<BigInteger> found = new CompletableFuture<>();
+        
+        for (int i = 0; i < workers; i++) {
+            primeSearch.execute(() -> {
+                try {
+                    // решето + тест Миллера-Рабина, поиск бросается, как только кто-то нашел простое
+                    BigInteger prime = new PrimeGenerator(random).generate(bitLength, found::isDone);
+                    if (prime != null) {
+                        found.complete(prime);
+                    }
+                } catch (RuntimeException e) {
+                    found.completeExceptionally(e);
+                }
+            });
+        }
         
-        return prime;
+        try {
+            return found.get();
+        } catch (InterruptedException e) {
+            found.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Поиск простого числа прерван", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка при поиске простого числа", e.getCause());
+        }
     }
     
     // тут считается хэш по SHA-256
     public static BigInteger computeFileHash(String filePath) throws Exception {
-        byte[] fileBytes = Files.readAllBytes(Paths.get(filePath));
+        return computeFileHash(filePath, HashMode.STREAM);
+    }
+    
+    // кэш хэшей файлов по метаданным (null - всегда хэшируем)
+    private static volatile DigestCache digestCache;
+    
+    public static void setDigestCache(DigestCache cache) {
+        digestCache = cache;
+    }
+    
+    public static BigInteger computeFileHash(String filePath, HashMode mode) throws Exception {
+        Path path = Paths.get(filePath);
+        
+        // если файл не менялся с прошлого раза, берем хэш из кэша
+        DigestCache cache = digestCache;
+        if (cache != null) {
+            DigestCache.FileState state = DigestCache.FileState.of(path);
+            byte[] cached = cache.lookup(path, state);
+            if (cached != null) {
+                return new BigInteger(1, cached);
+            }
+            
+            byte[] hashBytes = hashFile(path, mode);
+            cache.store(path, state, hashBytes);
+            return new BigInteger(1, hashBytes);
+        }
+        
+        return new BigInteger(1, hashFile(path, mode));
+    }
+    
+    // разбиение файлов на задачи хэширования: при включенном multiHash файлы от MULTI_HASH_MIN_SIZE
+    // до SMALL_FILE_SIZE идут группами по MultiSHA256.LANES (хэшируются вместе через hashSmallFiles),
+    // остальные - каждый отдельной задачей, чтобы не хэшироваться друг за другом в одной группе;
+    // файлы для полос сортируются по размеру: в группе из файлов разной длины полосы закончившихся
+    // простаивают (смешанные 1-4 КБ без сортировки медленнее обычного SHA256);
+    // группа - индексы файлов в списке
+    public static List<int[]> hashingGroups(List<String> files) {
+        List<int[]> groups = new ArrayList<>();
+        List<long[]> laneFiles = new ArrayList<>(); // {размер, индекс}
+        for (int i = 0; i < files.size(); i++) {
+            long size = laneSize(files.get(i));
+            if (size < 0) {
+                groups.add(new int[] {i});
+            } else {
+                laneFiles.add(new long[] {size, i});
+            }
+        }
+        
+        laneFiles.sort((a, b) -> Long.compare(a[0], b[0]));
+        for (int from = 0; from < laneFiles.size(); from += MultiSHA256.LANES) {
+            int[] group = new int[Math.min(MultiSHA256.LANES, laneFiles.size() - from)];
+            for (int i = 0; i < group.length; i++) {
+                group[i] = (int) laneFiles.get(from + i)[1];
+            }
+            groups.add(group);
+        }
+        return groups;
+    }
+    
+    // размер файла, если он хэшируется в полосах, иначе -1
+    // недоступный файл в полосы не идет: ошибку покажет его отдельное хэширование
+    private static long laneSize(String file) {
+        try {
+            long size = Files.size(Paths.get(file));
+            return isLaneSize(size) ? size : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+    
+    private static boolean isLaneSize(long size) {
+        return multiHash && digestCache == null && size >= MULTI_HASH_MIN_SIZE && size <= SMALL_FILE_SIZE;
+    }
+    
+    // хэши небольших файлов пачкой через MultiSHA256 (полосами по несколько файлов сразу)
+    // для остальных файлов (и для всех, если multiHash выключен или подключен кэш хэшей) в массиве null -
+    // их вызывающий хэширует обычным computeFileHash
+    public static BigInteger[] hashSmallFiles(List<String> files) throws IOException {
+        BigInteger[] hashes = new BigInteger[files.size()];
+        if (!multiHash || digestCache != null) {
+            return hashes;
+        }
+        
+        long start = System.nanoTime();
+        List<byte[]> contents = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < files.size(); i++) {
+            Path path = Paths.get(files.get(i));
+            if (isLaneSize(Files.size(path))) {
+                byte[] data = Files.readAllBytes(path);
+                contents.add(data);
+                indexes.add(i);
+                bytes += data.length;
+            }
+        }
+        // одно сообщение заняло бы одну полосу из LANES - обычный SHA256 быстрее
+        if (contents.size() < 2) {
+            return hashes;
+        }
+        
+        byte[][] digests = MultiSHA256.hash(contents.toArray(new byte[0][]));
+        for (int i = 0; i < digests.length; i++) {
+            hashes[indexes.get(i)] = new BigInteger(1, digests[i]);
+        }
+        metrics.bytesHashed(bytes);
+        metrics.time(RSAMetrics.HASH, System.nanoTime() - start);
+        return hashes;
+    }
+    
+    private static byte[] hashFile(Path path, HashMode mode) throws IOException {
+        long start = System.nanoTime();
+        SHA256 sha = new SHA256();
+        
+        switch (mode) {
+            case MAPPED:
+                hashMapped(path, sha);
+                break;
+            case DIRECT:
+                hashDirect(path, sha);
+                break;
+            default:
+                hashStream(path, sha);
+                break;
+        }
         
-        // метод из другого класса
-        byte[] hashBytes = SHA256.hash(fileBytes);
+        metrics.bytesHashed(sha.getByteCount());
+        byte[] hashBytes = sha.digest();
+        metrics.time(RSAMetrics.HASH, System.nanoTime() - start);
         
         // для красоты и отладки выводим
-        System.out.println("Хэш SHA-256 вычислен, длина: " + hashBytes.length + " байт");
+        log("Хэш SHA-256 вычислен, длина: " + hashBytes.length + " байт");
         
-        // преобразование в бигинт (1 - положит знак)
-        return new BigInteger(1, hashBytes);
+        return hashBytes;
+    }
+    
+    // читаем файл кусками, чтобы память не зависела от его размера
+    private static void hashStream(Path path, SHA256 sha) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            updateFrom(in, sha);
+        }
+    }
+    
+    private static void updateFrom(InputStream in, SHA256 sha) throws IOException {
+        byte[] chunk = new byte[HASH_CHUNK_SIZE];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            sha.update(chunk, 0, read);
+        }
+    }
+    
+    // отображаем файл окнами, SHA256 читает слова прямо из отображения
+    private static void hashMapped(Path path, SHA256 sha) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+                long length = Math.min(MAP_WINDOW_SIZE, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                sha.update(window);
+            }
+        }
+    }
+    
+    // читаем канал в direct-буфер без промежуточного массива в куче
+    private static void hashDirect(Path path, SHA256 sha) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            updateFrom(channel, sha);
+        }
+    }
+    
+    private static void updateFrom(ReadableByteChannel channel, SHA256 sha) throws IOException {
+        ByteBuffer buffer = directBuffer.get();
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            sha.update(buffer);
+            buffer.clear();
+        }
+    }
+    
+    // хэш данных без файла: поток, канал или буфер хэшируются по мере поступления
+    // (сами поток и канал не закрываются - ими владеет вызывающий)
+    public static BigInteger computeHash(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        SHA256 sha = new SHA256();
+        updateFrom(in, sha);
+        return finishHash(sha, start);
+    }
+    
+    public static BigInteger computeHash(ReadableByteChannel channel) throws IOException {
+        long start = System.nanoTime();
+        SHA256 sha = new SHA256();
+        updateFrom(channel, sha);
+        return finishHash(sha, start);
+    }
+    
+    public static BigInteger computeHash(ByteBuffer data) {
+        long start = System.nanoTime();
+        SHA256 sha = new SHA256();
+        sha.update(data);
+        return finishHash(sha, start);
+    }
+    
+    private static BigInteger finishHash(SHA256 sha, long start) {
+        metrics.bytesHashed(sha.getByteCount());
+        BigInteger hash = new BigInteger(1, sha.digest());
+        metrics.time(RSAMetrics.HASH, System.nanoTime() - start);
+        return hash;
     }
     
     // сама эцп
     public static String signFile(String inputFile, String privateKeyFile) throws Exception {
-        System.out.println("Подписание файла: " + inputFile);
+        return signFile(inputFile, privateKeyFile, HashMode.STREAM);
+    }
+    
+    public static String signFile(String inputFile, String privateKeyFile, HashMode mode) throws Exception {
+        log("Подписание файла: " + inputFile);
         
         // загрузка закрытого ключа
         KeyPair keys = loadKeyPair(privateKeyFile, true);
         
+        return signFile(inputFile, keys, mode);
+    }
+    
+    // подпись с уже загруженным закрытым ключом
+    public static String signFile(String inputFile, KeyPair keys, HashMode mode) throws Exception {
+        try {
+            return signWithKey(inputFile, keys, mode);
+        } catch (Exception e) {
+            metrics.increment(RSAMetrics.SIGN_FAILURE);
+            throw e;
+        }
+    }
+    
+    private static String signWithKey(String inputFile, KeyPair keys, HashMode mode) throws Exception {
         // хэш
-        BigInteger hash = computeFileHash(inputFile);
-        System.out.println("Хэш файла (SHA-256): " + hash.toString(16));
+        BigInteger hash = computeFileHash(inputFile, mode);
+        log(() -> "Хэш файла (SHA-256): " + hash.toString(16));
+        
+        BigInteger signature = signHash(hash, keys);
+        log(() -> "Подпись вычислена: " + shortHex(signature));
+        
+        // сохраняем
+        String signatureFile = inputFile + ".sig";
+        saveSignature(signature, signatureFile);
         
+        return signatureFile;
+    }
+    
+    // подпись файла, который только дописывается (журналы): рядом с .sig хранится состояние SHA-256
+    // (файл.sig.state), и при следующей подписи хэшируются только дописанные байты
+    // сама подпись обычная - SHA-256 всего файла, проверяется как всегда
+    public static String signFileIncremental(String inputFile, String privateKeyFile) throws Exception {
+        return signFileIncremental(inputFile, loadKeyPair(privateKeyFile, true));
+    }
+    
+    public static String signFileIncremental(String inputFile, KeyPair keys) throws Exception {
+        try {
+            return signIncrementalWithKey(inputFile, keys);
+        } catch (Exception e) {
+            metrics.increment(RSAMetrics.SIGN_FAILURE);
+            throw e;
+        }
+    }
+    
+    private static String signIncrementalWithKey(String inputFile, KeyPair keys) throws Exception {
+        String signatureFile = inputFile + ".sig";
+        String stateFile = signatureFile + ".state";
+        
+        long start = System.nanoTime();
+        SHA256 sha = new SHA256();
+        long resumedFrom = 0;
+        MidstateFile next;
+        try (FileChannel channel = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ)) {
+            // продолжаем с сохраненного состояния, если файл после него только дописывали
+            if (Files.exists(Paths.get(stateFile))) {
+                try {
+                    MidstateFile saved = MidstateFile.read(stateFile);
+                    if (saved.matches(channel)) {
+                        sha.importState(saved.state);
+                        resumedFrom = saved.fileSize;
+                        // состояние должно описывать ровно fileSize байт, иначе продолжение даст чужой хэш
+                        if (sha.getByteCount() != saved.fileSize) {
+                            log("Состояние SHA-256 не соответствует размеру файла, хэшируем целиком");
+                            sha = new SHA256();
+                            resumedFrom = 0;
+                        }
+                    } else {
+                        log("Файл изменен не дозаписью, хэшируем целиком");
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    log("Состояние SHA-256 не прочитано (" + e + "), хэшируем целиком");
+                }
+            }
+            
+            channel.position(resumedFrom);
+            updateFrom(channel, sha);
+            next = MidstateFile.of(channel, sha.getByteCount(), sha.exportState());
+        }
+        long hashedBytes = sha.getByteCount() - resumedFrom;
+        BigInteger hash = new BigInteger(1, sha.digest());
+        metrics.bytesHashed(hashedBytes);
+        metrics.time(RSAMetrics.HASH, System.nanoTime() - start);
+        log("Захэшировано новых байт: " + hashedBytes + " (учтено ранее: " + resumedFrom + ")");
+        
+        BigInteger signature = signHash(hash, keys);
+        saveSignature(signature, signatureFile);
+        next.write(stateFile);
+        return signatureFile;
+    }
+    
+    // подпись корня дерева Меркле: куски файла хэшируются параллельно на всех ядрах
+    public static String signFileTree(String inputFile, String privateKeyFile, int chunkSize) throws Exception {
+        log("Подписание файла (по кускам): " + inputFile);
+        return signFileTree(inputFile, loadKeyPair(privateKeyFile, true), chunkSize);
+    }
+    
+    public static String signFileTree(String inputFile, KeyPair keys, int chunkSize) throws Exception {
+        Path path = Paths.get(inputFile);
+        long fileSize = Files.size(path);
+        byte[][] chunkHashes = TreeHash.leafHashes(path, chunkSize);
+        byte[] root = TreeHash.root(chunkHashes);
+        log(() -> "Корень дерева хэшей: " + SHA256.hashToHex(root));
+        
+        BigInteger signature = signHash(new BigInteger(1, TreeHash.signedDigest(root, chunkSize, fileSize)), keys);
+        log(() -> "Подпись вычислена: " + shortHex(signature));
+        
+        // размер куска и хэши кусков пишутся в подпись: проверка построит такое же дерево,
+        // а читатель сможет проверить отдельные диапазоны (см. MerkleSignature)
+        String signatureFile = inputFile + ".sig";
+        long start = System.nanoTime();
+        new SignatureFile(SignatureFile.MODE_TREE, chunkSize, signature, fileSize, chunkHashes)
+                .write(signatureFile);
+        metrics.time(RSAMetrics.SIGNATURE_IO, System.nanoTime() - start);
+        
+        return signatureFile;
+    }
+    
+    // подпись данных без записи на диск: подпись готова сразу после последнего байта,
+    // возвращаются байты подписи (как в .sig, без длины)
+    public static byte[] sign(InputStream in, KeyPair keys) throws IOException {
+        return signHash(computeHash(in), keys).toByteArray();
+    }
+    
+    public static byte[] sign(ReadableByteChannel channel, KeyPair keys) throws IOException {
+        return signHash(computeHash(channel), keys).toByteArray();
+    }
+    
+    public static byte[] sign(ByteBuffer data, KeyPair keys) {
+        return signHash(computeHash(data), keys).toByteArray();
+    }
+    
+    // проверка данных без файлов по переданным байтам подписи
+    public static boolean verify(InputStream in, byte[] signature, KeyPair keys) throws IOException {
+        return verifyHash(computeHash(in), new BigInteger(1, signature), keys);
+    }
+    
+    public static boolean verify(ReadableByteChannel channel, byte[] signature, KeyPair keys) throws IOException {
+        return verifyHash(computeHash(channel), new BigInteger(1, signature), keys);
+    }
+    
+    public static boolean verify(ByteBuffer data, byte[] signature, KeyPair keys) {
+        return verifyHash(computeHash(data), new BigInteger(1, signature), keys);
+    }
+    
+    // проверка подписи уже посчитанного хэша
+    public static boolean verifyHash(BigInteger hash, BigInteger signature, KeyPair keys) {
+        return verifyHash(hash, signature, keys, true);
+    }
+    
+    // cacheable = false - кэш проверок для этого вызова не используется (например, для изменяемых данных)
+    public static boolean verifyHash(BigInteger hash, BigInteger signature, KeyPair keys, boolean cacheable) {
+        boolean isValid = knownValid(hash, signature, keys, cacheable);
+        if (!isValid) {
+            BigInteger recoveredHash = publicOperation(signature, keys);
+            isValid = hash.mod(keys.modulus).equals(recoveredHash);
+            if (isValid) {
+                rememberValid(hash, signature, keys, cacheable);
+            }
+        }
+        metrics.increment(isValid ? RSAMetrics.VERIFY_VALID : RSAMetrics.VERIFY_INVALID);
+        return isValid;
+    }
+    
+    // кэш успешных проверок (null - не используется)
+    private static volatile VerifyCache verifyCache;
+    
+    public static void setVerifyCache(VerifyCache cache) {
+        verifyCache = cache;
+    }
+    
+    private static boolean knownValid(BigInteger hash, BigInteger signature, KeyPair keys, boolean cacheable) {
+        VerifyCache cache = verifyCache;
+        return cacheable && cache != null && cache.isKnownValid(keys, hash, signature);
+    }
+    
+    private static void rememberValid(BigInteger hash, BigInteger signature, KeyPair keys, boolean cacheable) {
+        VerifyCache cache = verifyCache;
+        if (cacheable && cache != null) {
+            cache.putValid(keys, hash, signature);
+        }
+    }
+    
+    // возведение подписи в открытую степень
+    private static BigInteger publicOperation(BigInteger signature, KeyPair keys) {
+        long start = System.nanoTime();
+        BigInteger result = montgomery
+                ? keys.engineN().modPow(signature, keys.publicExponent)
+                : signature.modPow(keys.publicExponent, keys.modulus);
+        metrics.time(RSAMetrics.MOD_POW, System.nanoTime() - start);
+        return result;
+    }
+    
+    // подготовка ключа к серии операций: контексты Монтгомери создаются заранее, а не первой подписью
+    public static void prepare(KeyPair keys) {
+        if (!montgomery) {
+            return;
+        }
+        if (keys.hasCrt()) {
+            keys.engineP();
+            keys.engineQ();
+        } else {
+            keys.engineN();
+        }
+    }
+    
+    // подпись уже посчитанного хэша
+    public static BigInteger signHash(BigInteger hash, KeyPair keys) {
         // хэш смотрим по модулю (берем по модулю если он превосходит его)
         if (hash.compareTo(keys.modulus) >= 0) {
             hash = hash.mod(keys.modulus);
         }
         
         // подпись по формуле из теор части
-        BigInteger signature = hash.modPow(keys.privateExponent, keys.modulus);
-        System.out.println("Подпись вычислена: " + signature.toString(16).substring(0, 64) + "...");
-        
-        // сохраняем
-        String signatureFile = inputFile + ".sig";
-        saveSignature(signature, signatureFile);
+        BigInteger signature = privateOperation(hash, keys);
+        metrics.increment(RSAMetrics.SIGN_SUCCESS);
+        return signature;
+    }
+    
+    // возведение в закрытую степень: по КТО (формула Гарнера), если есть p и q, иначе напрямую
+    private static BigInteger privateOperation(BigInteger m, KeyPair keys) {
+        long start = System.nanoTime();
+        BigInteger result = privateOperationUntimed(m, keys);
+        metrics.time(RSAMetrics.MOD_POW, System.nanoTime() - start);
+        return result;
+    }
+    
+    private static BigInteger privateOperationUntimed(BigInteger m, KeyPair keys) {
+        boolean useEngine = montgomery;
+        if (!keys.hasCrt()) {
+            return useEngine
+                    ? keys.engineN().modPow(m, keys.privateExponent)
+                    : m.modPow(keys.privateExponent, keys.modulus);
+        }
         
-        return signatureFile;
+        // две экспоненты по модулям половинной длины вместо одной полной
+        BigInteger m1 = useEngine
+                ? keys.engineP().modPow(m, keys.exponentP)
+                : m.mod(keys.primeP).modPow(keys.exponentP, keys.primeP);
+        BigInteger m2 = useEngine
+                ? keys.engineQ().modPow(m, keys.exponentQ)
+                : m.mod(keys.primeQ).modPow(keys.exponentQ, keys.primeQ);
+        
+        // h = qInv * (m1 - m2) mod p, результат = m2 + h * q
+        BigInteger h = keys.crtCoefficient.multiply(m1.subtract(m2)).mod(keys.primeP);
+        BigInteger result = m2.add(h.multiply(keys.primeQ));
+        
+        // сбой в одной из половин дает подпись, по которой раскладывается n (q = НОД(s^e - m, n)),
+        // поэтому результат проверяется открытой экспонентой (при e = 65537 это дешево)
+        // и при несовпадении считается заново без КТО
+        if (keys.publicExponent != null
+                && !result.modPow(keys.publicExponent, keys.modulus).equals(m.mod(keys.modulus))) {
+            log("Подпись по КТО не прошла проверку, считаем без КТО");
+            return m.modPow(keys.privateExponent, keys.modulus);
+        }
+        return result;
     }
     
     // проверка подписи
     public static boolean verifySignature(String inputFile, String publicKeyFile) throws Exception {
-        System.out.println("Проверка подписи для файла: " + inputFile);
+        return verifySignature(inputFile, publicKeyFile, HashMode.STREAM);
+    }
+    
+    public static boolean verifySignature(String inputFile, String publicKeyFile, HashMode mode)
+            throws Exception {
+        log("Проверка подписи для файла: " + inputFile);
         
         // загрузка открытого ключа
         KeyPair keys = loadKeyPair(publicKeyFile, false);
         
-        // хэш
-        BigInteger computedHash = computeFileHash(inputFile);
-        System.out.println("Вычисленный хэш: " + computedHash.toString(16).substring(0, 64) + "...");
-        
-        // берем подпись из файла
-        String signatureFile = inputFile + ".sig";
-        BigInteger signature = loadSignature(signatureFile);
-        
-        // проверяем по формулам из теор части
-        BigInteger recoveredHash = signature.modPow(keys.publicExponent, keys.modulus);
-        System.out.println("Восстановленный хэш: " + recoveredHash.toString(16).substring(0, 64) + "...");
+        return verifySignature(inputFile, keys, mode);
+    }
+    
+    // проверка с уже загруженным открытым ключом (для пакетной проверки ключ читается один раз)
+    public static boolean verifySignature(String inputFile, KeyPair keys, HashMode mode)
+            throws Exception {
+        return verifySignature(inputFile, keys, mode, true);
+    }
+    
+    // cacheable = false - кэш проверок для этого вызова не используется
+    public static boolean verifySignature(String inputFile, KeyPair keys, HashMode mode, boolean cacheable)
+            throws Exception {
+        try {
+            return verifyWithSignatureFile(inputFile, null, null, keys, mode, cacheable);
+        } catch (Exception e) {
+            metrics.increment(RSAMetrics.VERIFY_FAILURE);
+            throw e;
+        }
+    }
+    
+    // проверка по манифесту подписей вместо .sig рядом с файлом
+    public static boolean verifySignature(String inputFile, SignatureManifest manifest, KeyPair keys,
+            HashMode mode) throws Exception {
+        return verifySignature(inputFile, null, manifest, keys, mode);
+    }
+    
+    // проверка с заранее посчитанным SHA-256 всего файла (null - считается здесь);
+    // для подписи в режиме дерева хэш не подходит и файл хэшируется заново
+    // подпись берется из манифеста, если он передан, иначе из .sig, а если нет и его -
+    // из манифеста по умолчанию в папке файла
+    public static boolean verifySignature(String inputFile, BigInteger fileHash, SignatureManifest manifest,
+            KeyPair keys, HashMode mode) throws Exception {
+        return verifySignature(inputFile, fileHash, manifest, keys, mode, true);
+    }
+    
+    // cacheable = false - кэш проверок для этого вызова не используется
+    public static boolean verifySignature(String inputFile, BigInteger fileHash, SignatureManifest manifest,
+            KeyPair keys, HashMode mode, boolean cacheable) throws Exception {
+        try {
+            return verifyWithSignatureFile(inputFile, fileHash, manifest, keys, mode, cacheable);
+        } catch (Exception e) {
+            metrics.increment(RSAMetrics.VERIFY_FAILURE);
+            throw e;
+        }
+    }
+    
+    private static boolean verifyWithSignatureFile(String inputFile, BigInteger fileHash,
+            SignatureManifest manifest, KeyPair keys, HashMode mode, boolean cacheable) throws Exception {
+        long start = System.nanoTime();
+        SignatureFile sigFile = readSignatureFor(inputFile, manifest);
+        metrics.time(RSAMetrics.SIGNATURE_IO, System.nanoTime() - start);
+        BigInteger signature = sigFile.signature;
+        
+        // хэш тем же способом, каким файл подписывали
+        BigInteger computedHash;
+        if (sigFile.mode == SignatureFile.MODE_TREE) {
+            long hashStart = System.nanoTime();
+            long fileSize = Files.size(Paths.get(inputFile));
+            byte[] root = TreeHash.root(Paths.get(inputFile), sigFile.chunkSize);
+            computedHash = new BigInteger(1, TreeHash.signedDigest(root, sigFile.chunkSize, fileSize));
+            metrics.bytesHashed(fileSize);
+            metrics.time(RSAMetrics.HASH, System.nanoTime() - hashStart);
+        } else if (fileHash != null) {
+            computedHash = fileHash;
+        } else {
+            computedHash = computeFileHash(inputFile, mode);
+        }
+        log(() -> "Вычисленный хэш: " + shortHex(computedHash));
         
-        // сравниваем хэши
-        boolean isValid = computedHash.mod(keys.modulus).equals(recoveredHash);
+        boolean isValid;
+        if (knownValid(computedHash, signature, keys, cacheable)) {
+            log("Подпись уже проверялась (результат из кэша проверок)");
+            isValid = true;
+        } else {
+            // проверяем по формулам из теор части
+            BigInteger recoveredHash = publicOperation(signature, keys);
+            log(() -> "Восстановленный хэш: " + shortHex(recoveredHash));
+            
+            // сравниваем хэши
+            isValid = computedHash.mod(keys.modulus).equals(recoveredHash);
+            if (isValid) {
+                rememberValid(computedHash, signature, keys, cacheable);
+            }
+        }
+        metrics.increment(isValid ? RSAMetrics.VERIFY_VALID : RSAMetrics.VERIFY_INVALID);
         
         if (isValid) {
-            System.out.println("Подписть верна");
+            log("Подписть верна");
         } else {
-            System.out.println("Подпись неверна");
+            log("Подпись неверна");
         }
         
         return isValid;
     }
     
-    // тут сохраняем ключи
+    // подпись файла: из манифеста или из .sig (в ней же записан режим хэширования)
+    private static SignatureFile readSignatureFor(String inputFile, SignatureManifest manifest)
+            throws IOException {
+        String signatureFile = inputFile + ".sig";
+        if (manifest == null && !Files.exists(Paths.get(signatureFile))) {
+            manifest = SignatureManifest.openDefaultFor(inputFile);
+        }
+        if (manifest == null) {
+            return SignatureFile.read(signatureFile);
+        }
+        
+        SignatureManifest.Entry entry = manifest.lookup(inputFile);
+        if (entry == null) {
+            throw new FileNotFoundException("Подписи файла нет в манифесте: " + inputFile);
+        }
+        return new SignatureFile(SignatureFile.MODE_SHA256, 0, entry.signature);
+    }
+    
+    // начало числа в hex для логов (у хэша с ведущими нулями цифр может быть меньше 64)
+    private static String shortHex(BigInteger value) {
+        String hex = value.toString(16);
+        return hex.length() > 64 ? hex.substring(0, 64) + "..." : hex;
+    }
+    
+    // тут сохраняем ключи (компактный двоичный формат, см. KeyFormat)
     public static void saveKeyPair(KeyPair keys, String privateKeyFile, String publicKeyFile) 
             throws IOException {
         
         // закрытый
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(privateKeyFile))) {
-            oos.writeObject(keys.modulus);
-            oos.writeObject(keys.privateExponent);
-            System.out.println("Закрытый ключ сохранен в: " + privateKeyFile);
-        }
+        Files.write(Paths.get(privateKeyFile), KeyFormat.encodeCompact(keys, true));
+        log("Закрытый ключ сохранен в: " + privateKeyFile);
         
         // открытый
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(publicKeyFile))) {
-            oos.writeObject(keys.modulus);
-            oos.writeObject(keys.publicExponent);
-            System.out.println("Открытый ключ сохранен в: " + publicKeyFile);
-        }
+        Files.write(Paths.get(publicKeyFile), KeyFormat.encodeCompact(keys, false));
+        log("Открытый ключ сохранен в: " + publicKeyFile);
+    }
+    
+    // кэш загруженных ключей (null - каждый раз читаем с диска)
+    private static volatile KeyCache keyCache;
+    
+    public static void setKeyCache(KeyCache cache) {
+        keyCache = cache;
     }
     
-    // тут загружаем ключи
+    // тут загружаем ключи (компактный формат, PEM/DER или старый сериализованный)
     public static KeyPair loadKeyPair(String keyFile, boolean isPrivate) 
             throws IOException, ClassNotFoundException {
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(keyFile))) {
-            BigInteger modulus = (BigInteger) ois.readObject();
-            BigInteger exponent = (BigInteger) ois.readObject();
-            
-            if (isPrivate) {
-                return new KeyPair(modulus, null, exponent);
-            } else {
-                return new KeyPair(modulus, exponent, null);
+        long start = System.nanoTime();
+        try {
+            KeyCache cache = keyCache;
+            if (cache != null) {
+                return cache.get(keyFile, isPrivate);
             }
+            return KeyFormat.read(Paths.get(keyFile), isPrivate);
+        } finally {
+            metrics.time(RSAMetrics.KEY_LOAD, System.nanoTime() - start);
         }
     }
     
     // сохранение подписи
-    private static void saveSignature(BigInteger signature, String filename) 
+    public static void saveSignature(BigInteger signature, String filename) 
         throws IOException {
     
+    long start = System.nanoTime();
     try (DataOutputStream dos = new DataOutputStream(
             new FileOutputStream(filename))) {
         // получение байтов
@@ -195,15 +943,18 @@ public class RSA {
         // запись байтов
         dos.write(sigBytes);
         
-        System.out.println("Подпись сохранена: " + filename + 
+        log("Подпись сохранена: " + filename + 
                          " (размер: " + sigBytes.length + " байт)");
+    } finally {
+        metrics.time(RSAMetrics.SIGNATURE_IO, System.nanoTime() - start);
     }
 }
     
     // загрузка подписи
-    private static BigInteger loadSignature(String filename) 
+    public static BigInteger loadSignature(String filename) 
         throws IOException {
     
+    long start = System.nanoTime();
     try (DataInputStream dis = new DataInputStream(
             new FileInputStream(filename))) {
         // начинаем с длины массива
@@ -215,10 +966,12 @@ public class RSA {
         // читаем байты
         dis.readFully(sigBytes);
         
-        System.out.println("Подпись загружена: " + filename + 
+        log("Подпись загружена: " + filename + 
                          " (размер: " + length + " байт)");
         
         return new BigInteger(sigBytes);
+    } finally {
+        metrics.time(RSAMetrics.SIGNATURE_IO, System.nanoTime() - start);
     }
 }
     
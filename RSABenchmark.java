@@ -0,0 +1,251 @@
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// набор замеров: SHA256 на разных размерах, modPow, генерация ключей, подпись и проверка
+// результаты пишутся в JSON, чтобы сравнивать между версиями
+// запуск: java RSABenchmark [файл.json] [макс. размер сообщения в байтах]
+public class RSABenchmark {
+    
+    private static final int[] KEY_SIZES = {2048, 3072, 4096};
+    private static final int KEYGEN_RUNS = 3;
+    private static final int PRIME_RUNS = 20;
+    private static final int SIGN_RUNS = 50;
+    
+    // размеры сообщений для сравнения MultiSHA256 и SHA256: {от, до} байт
+    private static final int[][] MULTI_HASH_SIZES = {{200, 200}, {1024, 1024}, {4096, 4096}, {1024, 4096}};
+    
+    // данные для хэширования подаются кусками такого размера
+    private static final int FEED_SIZE = 1024 * 1024;
+    
+    // минимальное время одного замера, чтобы мелкие размеры не тонули в шуме
+    private static final long MIN_MEASURE_NANOS = 500_000_000L;
+    
+    // один результат замера
+    private static class Result {
+        final String name;
+        final String param;
+        final double opsPerSecond;
+        final double mbPerSecond;
+        
+        Result(String name, String param, double opsPerSecond, double mbPerSecond) {
+            this.name = name;
+            this.param = param;
+            this.opsPerSecond = opsPerSecond;
+            this.mbPerSecond = mbPerSecond;
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        String outputFile = args.length > 0 ? args[0] : "benchmark.json";
+        long maxSize = args.length > 1 ? Long.parseLong(args[1]) : 1L << 30;
+        // диагностика в консоль не должна попадать в замеры
+        RSA.setVerbose(false);
+        
+        List<Result> results = new ArrayList<>();
+        
+        // хэширование: наш SHA256 против MessageDigest из JDK
+        byte[] feed = new byte[FEED_SIZE];
+        new Random(42).nextBytes(feed);
+        MessageDigest jdk = MessageDigest.getInstance("SHA-256");
+        
+        for (long size = 64; size <= maxSize; size *= 16) {
+            final long n = size;
+            SHA256 sha = new SHA256();
+            results.add(measureHash("sha256.custom", n,
+                    () -> { feedData(n, feed, sha::update); sha.digest(); }));
+            results.add(measureHash("sha256.jdk", n,
+                    () -> { feedData(n, feed, jdk::update); jdk.digest(); }));
+        }
+        
+        // пакетное хэширование небольших файлов, как в BatchSigner/BatchVerifier: группа из LANES
+        // сообщений через MultiSHA256 против тех же сообщений по одному через SHA256
+        // (по этим числам решается, включать ли RSA.setMultiHash)
+        Random random = new Random(42);
+        for (int[] range : MULTI_HASH_SIZES) {
+            byte[][] group = new byte[MultiSHA256.LANES][];
+            long groupBytes = 0;
+            for (int i = 0; i < group.length; i++) {
+                group[i] = new byte[range[0] + random.nextInt(range[1] - range[0] + 1)];
+                random.nextBytes(group[i]);
+                groupBytes += group[i].length;
+            }
+            String param = range[0] == range[1] ? String.valueOf(range[0]) : range[0] + "-" + range[1];
+            results.add(measureHash("sha256.multi", param, groupBytes, () -> MultiSHA256.hash(group)));
+            results.add(measureHash("sha256.single", param, groupBytes, () -> {
+                for (byte[] message : group) {
+                    SHA256.hash(message);
+                }
+            }));
+        }
+        
+        // поиск простых: решето PrimeGenerator против BigInteger(bits, 100, rnd), зерно фиксировано
+        for (int keySize : KEY_SIZES) {
+            int bits = keySize / 2;
+            PrimeGenerator generator = new PrimeGenerator(new Random(7));
+            long start = System.nanoTime();
+            for (int i = 0; i < PRIME_RUNS; i++) {
+                generator.generate(bits);
+            }
+            results.add(new Result("prime.sieve", String.valueOf(bits),
+                    opsPerSecond(PRIME_RUNS, System.nanoTime() - start), 0));
+            
+            Random seeded = new Random(7);
+            start = System.nanoTime();
+            for (int i = 0; i < PRIME_RUNS; i++) {
+                new BigInteger(bits, 100, seeded);
+            }
+            results.add(new Result("prime.jdk", String.valueOf(bits),
+                    opsPerSecond(PRIME_RUNS, System.nanoTime() - start), 0));
+        }
+        
+        // возведение в степень: MontgomeryEngine против BigInteger.modPow
+        Random modRandom = new Random(11);
+        for (int keySize : KEY_SIZES) {
+            BigInteger n = new BigInteger(keySize, modRandom).setBit(keySize - 1).setBit(0);
+            BigInteger base = new BigInteger(keySize - 1, modRandom);
+            BigInteger d = new BigInteger(keySize, modRandom).mod(n);
+            BigInteger e = BigInteger.valueOf(65537);
+            MontgomeryEngine engine = new MontgomeryEngine(n);
+            
+            results.add(measureModPow("modpow.jdk.public", keySize, () -> base.modPow(e, n)));
+            results.add(measureModPow("modpow.montgomery.public", keySize, () -> engine.modPow(base, e)));
+            results.add(measureModPow("modpow.jdk.private", keySize, () -> base.modPow(d, n)));
+            results.add(measureModPow("modpow.montgomery.private", keySize, () -> engine.modPow(base, d)));
+        }
+        
+        // генерация ключей, подпись и проверка на временных файлах
+        Path dir = Files.createTempDirectory("rsa-bench");
+        Path data = dir.resolve("data.bin");
+        Files.write(data, feed);
+        
+        try {
+            for (int keySize : KEY_SIZES) {
+                long start = System.nanoTime();
+                RSA.KeyPair keys = null;
+                for (int i = 0; i < KEYGEN_RUNS; i++) {
+                    keys = RSA.generateKeyPair(keySize);
+                }
+                results.add(new Result("rsa.keygen", String.valueOf(keySize),
+                        opsPerSecond(KEYGEN_RUNS, System.nanoTime() - start), 0));
+                
+                String privateKey = dir.resolve("private" + keySize + ".key").toString();
+                String publicKey = dir.resolve("public" + keySize + ".key").toString();
+                RSA.saveKeyPair(keys, privateKey, publicKey);
+                
+                // прогрев
+                for (int i = 0; i < SIGN_RUNS / 5; i++) {
+                    RSA.signFile(data.toString(), privateKey);
+                    RSA.verifySignature(data.toString(), publicKey);
+                }
+                
+                start = System.nanoTime();
+                for (int i = 0; i < SIGN_RUNS; i++) {
+                    RSA.signFile(data.toString(), privateKey);
+                }
+                results.add(new Result("rsa.sign", String.valueOf(keySize),
+                        opsPerSecond(SIGN_RUNS, System.nanoTime() - start), 0));
+                
+                start = System.nanoTime();
+                for (int i = 0; i < SIGN_RUNS; i++) {
+                    RSA.verifySignature(data.toString(), publicKey);
+                }
+                results.add(new Result("rsa.verify", String.valueOf(keySize),
+                        opsPerSecond(SIGN_RUNS, System.nanoTime() - start), 0));
+            }
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+        
+        writeJson(results, outputFile);
+        System.out.println("Результаты замеров сохранены в: " + outputFile);
+    }
+    
+    // приемник данных (update у SHA256 и у MessageDigest)
+    private interface Sink {
+        void update(byte[] data, int offset, int length);
+    }
+    
+    // подаем n байт повторяющимся буфером, чтобы 1 ГБ не держать в памяти
+    private static void feedData(long n, byte[] feed, Sink sink) {
+        while (n > 0) {
+            int length = (int) Math.min(n, feed.length);
+            sink.update(feed, 0, length);
+            n -= length;
+        }
+    }
+    
+    // повторяем операцию, пока не наберется минимальное время (после прогрева)
+    private static Result measureHash(String name, long size, Runnable op) {
+        return measureHash(name, String.valueOf(size), size, op);
+    }
+    
+    // bytes - сколько байт хэширует одна операция
+    private static Result measureHash(String name, String param, long bytes, Runnable op) {
+        for (int i = 0; i < 3; i++) {
+            op.run();
+        }
+        
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            op.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MIN_MEASURE_NANOS);
+        
+        double perSecond = opsPerSecond(ops, elapsed);
+        return new Result(name, param, perSecond, perSecond * bytes / (1024.0 * 1024.0));
+    }
+    
+    // операций в секунду за MIN_MEASURE_NANOS (после такого же прогрева)
+    private static Result measureModPow(String name, int keySize, Runnable op) {
+        for (long end = System.nanoTime() + MIN_MEASURE_NANOS; System.nanoTime() < end; ) {
+            op.run();
+        }
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            op.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MIN_MEASURE_NANOS);
+        return new Result(name, String.valueOf(keySize), opsPerSecond(ops, elapsed), 0);
+    }
+    
+    private static double opsPerSecond(long ops, long nanos) {
+        return ops / (nanos / 1e9);
+    }
+    
+    private static void writeJson(List<Result> results, String outputFile) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"cores\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"results\": [\n");
+        
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            json.append(String.format(Locale.ROOT,
+                    "    {\"name\": \"%s\", \"param\": \"%s\", \"opsPerSecond\": %.3f, \"mbPerSecond\": %.3f}",
+                    r.name, r.param, r.opsPerSecond, r.mbPerSecond));
+            json.append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        
+        json.append("  ]\n}\n");
+        Files.writeString(Path.of(outputFile), json.toString());
+    }
+}
\ No newline at end of file
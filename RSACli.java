@@ -0,0 +1,349 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+// консольный запуск без окна (для сборочных агентов без графики)
+// команды:
+//   keygen [--bits N] закрытый.key открытый.key
+//   sign файл закрытый.key
+//   verify файл открытый.key
+//   batch-sign папка|маска закрытый.key
+//   batch-verify папка|маска открытый.key
+// общие опции: --threads N, --mode STREAM|MAPPED|DIRECT, --report отчет.json, --verbose,
+// --manifest файл (подписи в одном манифесте вместо .sig рядом с каждым файлом)
+// в конце печатается (или пишется в --report) отчет JSON: файлы/с, МБ/с и время по этапам
+public class RSACli {
+    
+    // сколько файлов обрабатывается между выводами прогресса
+    private static final int PROGRESS_STEP = 256;
+    
+    // разобранные аргументы
+    private static class Options {
+        final List<String> args = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int bits = 2048;
+        RSA.HashMode mode = RSA.HashMode.STREAM;
+        String report;
+        String manifest;
+        boolean verbose;
+    }
+    
+    // итог команды для отчета
+    private static class Report {
+        final String command;
+        final int threads;
+        int files;
+        int failed;
+        long bytes;
+        long nanos;
+        
+        Report(String command, int threads) {
+            this.command = command;
+            this.threads = threads;
+        }
+    }
+    
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    // код возврата: 0 - все успешно, 1 - есть неверные подписи или ошибки
+    static int run(String[] args) throws Exception {
+        Options options = parse(args);
+        if (options.args.isEmpty()) {
+            throw new IllegalArgumentException("Не указана команда");
+        }
+        RSA.setVerbose(options.verbose);
+        
+        // метрики без регистрации в JMX - нужны только для отчета
+        JmxMetrics metrics = new JmxMetrics();
+        RSA.setMetrics(metrics);
+        
+        String command = options.args.get(0);
+        Report report = new Report(command, options.threads);
+        long start = System.nanoTime();
+        
+        switch (command) {
+            case "keygen":
+                requireArgs(options, 3);
+                RSA.generateKeys(options.bits, options.args.get(1), options.args.get(2));
+                break;
+            case "sign":
+                requireArgs(options, 3);
+                signOne(options, report);
+                break;
+            case "verify":
+                requireArgs(options, 3);
+                verifyOne(options, report);
+                break;
+            case "batch-sign":
+                requireArgs(options, 3);
+                batchSign(options, report);
+                break;
+            case "batch-verify":
+                requireArgs(options, 3);
+                batchVerify(options, report);
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестная команда: " + command);
+        }
+        
+        report.nanos = System.nanoTime() - start;
+        RSA.setMetrics(null);
+        
+        String json = toJson(report, metrics);
+        if (options.report != null) {
+            Files.writeString(Path.of(options.report), json);
+            System.err.println("Отчет сохранен в: " + options.report);
+        } else {
+            System.out.print(json);
+        }
+        return report.failed == 0 ? 0 : 1;
+    }
+    
+    private static void signOne(Options options, Report report) throws Exception {
+        String file = options.args.get(1);
+        report.files = 1;
+        report.bytes = Files.size(Paths.get(file));
+        String signatureFile = RSA.signFile(file, options.args.get(2), options.mode);
+        System.err.println("Подпись сохранена в: " + signatureFile);
+    }
+    
+    private static void verifyOne(Options options, Report report) throws Exception {
+        String file = options.args.get(1);
+        report.files = 1;
+        report.bytes = Files.size(Paths.get(file));
+        boolean valid = options.manifest == null
+                ? RSA.verifySignature(file, options.args.get(2), options.mode)
+                : RSA.verifySignature(file, SignatureManifest.open(options.manifest),
+                        RSA.loadKeyPair(options.args.get(2), false), options.mode);
+        if (!valid) {
+            report.failed = 1;
+        }
+        System.err.println(file + ": " + (valid ? "подпись верна" : "подпись неверна"));
+    }
+    
+    // пакетная подпись кусками по PROGRESS_STEP файлов, между кусками - строка прогресса
+    private static void batchSign(Options options, Report report) throws Exception {
+        List<String> files = listFiles(options.args.get(1), false, options.manifest);
+        RSA.KeyPair keys = RSA.loadKeyPair(options.args.get(2), true);
+        BatchSigner signer = new BatchSigner(keys, options.threads, options.threads, 256, options.mode);
+        
+        report.files = files.size();
+        report.bytes = totalSize(files);
+        SignatureManifest.Writer manifest =
+                options.manifest != null ? new SignatureManifest.Writer(options.manifest) : null;
+        try {
+            for (int from = 0; from < files.size(); from += PROGRESS_STEP) {
+                int to = Math.min(from + PROGRESS_STEP, files.size());
+                for (BatchSigner.Result result : signer.signAll(files.subList(from, to), manifest)) {
+                    if (result.error != null) {
+                        report.failed++;
+                        System.err.println(result);
+                    }
+                }
+                progress("Подписано", to, files.size());
+            }
+        } finally {
+            signer.close();
+            if (manifest != null) {
+                manifest.close();
+            }
+        }
+    }
+    
+    private static void batchVerify(Options options, Report report) throws Exception {
+        // с манифестом (явным или манифестом по умолчанию в папке) проверяются все файлы,
+        // без него - только те, у которых есть .sig
+        SignatureManifest manifest = options.manifest != null ? SignatureManifest.open(options.manifest) : null;
+        boolean signedOnly = manifest == null
+                && !Files.exists(directoryOf(options.args.get(1)).resolve(SignatureManifest.DEFAULT_NAME));
+        List<String> files = listFiles(options.args.get(1), signedOnly, options.manifest);
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Нет подписанных файлов для проверки: " + options.args.get(1));
+        }
+        RSA.KeyPair keys = RSA.loadKeyPair(options.args.get(2), false);
+        
+        report.files = files.size();
+        report.bytes = totalSize(files);
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        try {
+            for (int from = 0; from < files.size(); from += PROGRESS_STEP) {
+                int to = Math.min(from + PROGRESS_STEP, files.size());
+                List<BatchVerifier.Result> results =
+                        BatchVerifier.verifyAll(files.subList(from, to), keys, executor, options.mode, manifest);
+                for (BatchVerifier.Result result : results) {
+                    if (!result.valid) {
+                        report.failed++;
+                        System.err.println(result);
+                    }
+                }
+                progress("Проверено", to, files.size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    private static void progress(String action, int done, int total) {
+        System.err.printf("%s %d из %d (%d%%)%n", action, done, total, total == 0 ? 100 : done * 100L / total);
+    }
+    
+    // папка - все файлы в ней, иначе маска вида dir/*.bin (без рекурсии); файлы .sig и .sig.state пропускаются
+    // для проверки берутся только файлы, у которых есть .sig
+    // сам манифест (переданный и по умолчанию) в список не попадает
+    static List<String> listFiles(String pattern, boolean signedOnly, String manifest) throws IOException {
+        Path path = Paths.get(pattern);
+        Path directory = directoryOf(pattern);
+        PathMatcher matcher = Files.isDirectory(path)
+                ? p -> true
+                : directory.getFileSystem().getPathMatcher("glob:" + path.getFileName());
+        
+        Path manifestPath = manifest != null ? Paths.get(manifest).toAbsolutePath().normalize() : null;
+        List<String> files = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(directory)) {
+            entries.filter(Files::isRegularFile)
+                   .filter(p -> matcher.matches(p.getFileName()))
+                   .filter(p -> !p.getFileName().toString().equals(SignatureManifest.DEFAULT_NAME))
+                   .filter(p -> !p.toAbsolutePath().normalize().equals(manifestPath))
+                   .map(Path::toString)
+                   .filter(name -> !name.endsWith(".sig") && !name.endsWith(".sig.state"))
+                   .filter(name -> !signedOnly || Files.exists(Paths.get(name + ".sig")))
+                   .sorted()
+                   .forEach(files::add);
+        }
+        return files;
+    }
+    
+    // папка, в которой ищутся файлы: сам аргумент или папка маски
+    private static Path directoryOf(String pattern) {
+        Path path = Paths.get(pattern);
+        if (Files.isDirectory(path)) {
+            return path;
+        }
+        return path.getParent() != null ? path.getParent() : Paths.get(".");
+    }
+    
+    private static long totalSize(List<String> files) throws IOException {
+        long total = 0;
+        for (String file : files) {
+            total += Files.size(Paths.get(file));
+        }
+        return total;
+    }
+    
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    options.threads = Integer.parseInt(value(args, ++i));
+                    if (options.threads < 1) {
+                        throw new IllegalArgumentException("Число потоков должно быть положительным");
+                    }
+                    break;
+                case "--bits":
+                    options.bits = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--mode":
+                    options.mode = RSA.HashMode.valueOf(value(args, ++i).toUpperCase(Locale.ROOT));
+                    break;
+                case "--manifest":
+                    options.manifest = value(args, ++i);
+                    break;
+                case "--report":
+                    options.report = value(args, ++i);
+                    break;
+                case "--verbose":
+                    options.verbose = true;
+                    break;
+                default:
+                    options.args.add(args[i]);
+            }
+        }
+        return options;
+    }
+    
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Не указано значение для " + args[index - 1]);
+        }
+        return args[index];
+    }
+    
+    private static void requireArgs(Options options, int count) {
+        if (options.args.size() != count) {
+            throw new IllegalArgumentException("Неверное число аргументов для " + options.args.get(0));
+        }
+    }
+    
+    private static void usage() {
+        System.err.println("Использование: java RSACli <команда> [опции]");
+        System.err.println("  keygen [--bits N] закрытый.key открытый.key");
+        System.err.println("  sign файл закрытый.key");
+        System.err.println("  verify файл открытый.key");
+        System.err.println("  batch-sign папка|маска закрытый.key");
+        System.err.println("  batch-verify папка|маска открытый.key");
+        System.err.println("Опции: --threads N, --mode STREAM|MAPPED|DIRECT, --report отчет.json, --verbose,");
+        System.err.println("       --manifest файл");
+    }
+    
+    private static String toJson(Report report, JmxMetrics metrics) {
+        double seconds = report.nanos / 1e9;
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"command\": \"").append(report.command).append("\",\n");
+        json.append("  \"threads\": ").append(report.threads).append(",\n");
+        json.append("  \"files\": ").append(report.files).append(",\n");
+        json.append("  \"failed\": ").append(report.failed).append(",\n");
+        json.append("  \"bytes\": ").append(report.bytes).append(",\n");
+        json.append(String.format(Locale.ROOT, "  \"seconds\": %.3f,\n", seconds));
+        json.append(String.format(Locale.ROOT, "  \"filesPerSecond\": %.3f,\n", report.files / seconds));
+        json.append(String.format(Locale.ROOT, "  \"mbPerSecond\": %.3f,\n",
+                report.bytes / (1024.0 * 1024.0) / seconds));
+        
+        // этапы: число вызовов и суммарное время по всем потокам
+        json.append("  \"phases\": {");
+        Map<String, Long> counts = metrics.getCounts();
+        Map<String, Double> millis = metrics.getTotalMillis();
+        int i = 0;
+        for (Map.Entry<String, Double> phase : millis.entrySet()) {
+            json.append(i++ == 0 ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT, "    \"%s\": {\"count\": %d, \"totalMillis\": %.3f}",
+                    phase.getKey(), counts.get(phase.getKey()), phase.getValue()));
+        }
+        json.append(millis.isEmpty() ? "},\n" : "\n  },\n");
+        
+        // счетчики результатов (sign.success, verify.valid и т.д.)
+        json.append("  \"counters\": {");
+        i = 0;
+        for (Map.Entry<String, Long> counter : counts.entrySet()) {
+            if (millis.containsKey(counter.getKey())) {
+                continue;
+            }
+            json.append(i++ == 0 ? "\n" : ",\n");
+            json.append("    \"").append(counter.getKey()).append("\": ").append(counter.getValue());
+        }
+        json.append(i == 0 ? "}\n" : "\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+}
\ No newline at end of file
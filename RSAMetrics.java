@@ -0,0 +1,38 @@
+// точка подключения метрик для операций RSA
+// по умолчанию NOOP - замеры ничего не стоят, кроме вызова System.nanoTime
+public interface RSAMetrics {
+    
+    // таймеры
+    String KEY_LOAD = "keyLoad";            // чтение ключа с диска (или из кэша)
+    String HASH = "hash";                   // хэширование данных
+    String MOD_POW = "modPow";              // возведение в степень по модулю
+    String SIGNATURE_IO = "signatureIo";    // запись и чтение файлов подписи
+    
+    // счетчики
+    String SIGN_SUCCESS = "sign.success";
+    String SIGN_FAILURE = "sign.failure";
+    String VERIFY_VALID = "verify.valid";
+    String VERIFY_INVALID = "verify.invalid";
+    String VERIFY_FAILURE = "verify.failure";
+    
+    // длительность операции в наносекундах
+    void time(String operation, long nanos);
+    
+    void increment(String counter);
+    
+    void bytesHashed(long bytes);
+    
+    RSAMetrics NOOP = new RSAMetrics() {
+        @Override
+        public void time(String operation, long nanos) {
+        }
+        
+        @Override
+        public void increment(String counter) {
+        }
+        
+        @Override
+        public void bytesHashed(long bytes) {
+        }
+    };
+}
\ No newline at end of file
@@ -1,17 +1,18 @@
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 // хэширование через SHA-256
 public class SHA256 {
     
     // начальные значения хэша (от корней первых 8 простых (32 бита дробных))
-    private static final int[] INITIAL_HASH = {
+    static final int[] INITIAL_HASH = {
         0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
         0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
     };
     
     // константы (от куб корнейпервых 64 простых)
-    private static final int[] K = {
+    static final int[] K = {
         0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
         0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
         0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
@@ -22,59 +23,205 @@ public class SHA256 {
         0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
     };
     
-    // само вычисление
-    public static byte[] hash(byte[] data) {
-        // дополнение
-        byte[] padded = padMessage(data);
+    // текущее состояние для потокового хэширования
+    private final int[] state = new int[8];
+    
+    // хвост сообщения, который еще не набрал целый блок
+    private final byte[] buffer = new byte[64];
+    private int bufferLength;
+    
+    // сколько всего байт прошло через update
+    private long byteCount;
+    
+    // расписание сообщения, переиспользуется для каждого блока
+    private final int[] W = new int[64];
+    
+    // экземпляр на поток для одноразового hash(), чтобы не создавать объект на каждый вызов
+    private static final ThreadLocal<SHA256> LOCAL = ThreadLocal.withInitial(SHA256::new);
+    
+    public SHA256() {
+        reset();
+    }
+    
+    // сброс в начальное состояние
+    public void reset() {
+        System.arraycopy(INITIAL_HASH, 0, state, 0, 8);
+        bufferLength = 0;
+        byteCount = 0;
+    }
+    
+    // сколько байт уже подано с последнего reset/digest
+    public long getByteCount() {
+        return byteCount;
+    }
+    
+    // размер сохраненного промежуточного состояния: 8 слов, число байт, длина хвоста и сам хвост
+    public static final int STATE_SIZE = 8 * 4 + 8 + 1 + 64;
+    
+    // промежуточное состояние (до дополнения), по нему хэширование можно продолжить позже
+    public byte[] exportState() {
+        ByteBuffer out = ByteBuffer.allocate(STATE_SIZE);
+        for (int word : state) {
+            out.putInt(word);
+        }
+        out.putLong(byteCount);
+        out.put((byte) bufferLength);
+        out.put(buffer);
+        return out.array();
+    }
+    
+    // продолжение с сохраненного состояния (как будто все те байты поданы в этот объект)
+    public void importState(byte[] saved) {
+        if (saved.length != STATE_SIZE) {
+            throw new IllegalArgumentException("Некорректный размер состояния SHA-256: " + saved.length);
+        }
+        ByteBuffer in = ByteBuffer.wrap(saved);
+        int[] words = new int[8];
+        for (int i = 0; i < 8; i++) {
+            words[i] = in.getInt();
+        }
+        long count = in.getLong();
+        int tailLength = in.get() & 0xFF;
+        if (count < 0 || tailLength >= 64 || count % 64 != tailLength) {
+            throw new IllegalArgumentException("Поврежденное состояние SHA-256");
+        }
         
-        // инициализация хэша
-        int[] hash = INITIAL_HASH.clone();
+        System.arraycopy(words, 0, state, 0, 8);
+        byteCount = count;
+        bufferLength = tailLength;
+        in.get(buffer);
+    }
+    
+    public void update(byte[] data) {
+        update(data, 0, data.length);
+    }
+    
+    // добавление очередного куска данных
+    public void update(byte[] data, int offset, int length) {
+        byteCount += length;
         
-        // обработка по блокам
-        for (int i = 0; i < padded.length; i += 64) {
-            processBlock(padded, i, hash);
+        // сначала дополняем хвост с прошлого вызова
+        if (bufferLength > 0) {
+            int n = Math.min(64 - bufferLength, length);
+            System.arraycopy(data, offset, buffer, bufferLength, n);
+            bufferLength += n;
+            offset += n;
+            length -= n;
+            if (bufferLength < 64) {
+                return;
+            }
+            processBlock(buffer, 0);
+            bufferLength = 0;
         }
         
-        // преобразуем из массива инт в массив байт
-        return intArrayToByteArray(hash);
+        // целые блоки берем прямо из входного массива без копирования
+        while (length >= 64) {
+            processBlock(data, offset);
+            offset += 64;
+            length -= 64;
+        }
+        
+        // остаток запоминаем до следующего вызова
+        System.arraycopy(data, offset, buffer, 0, length);
+        bufferLength = length;
     }
     
-    // описание метода дополнения
-    private static byte[] padMessage(byte[] message) {
-        // длина исходного текста в битах
-        long originalBitLength = (long) message.length * 8;
+    public void update(ByteBuffer data) {
+        if (data.hasArray()) {
+            int length = data.remaining();
+            update(data.array(), data.arrayOffset() + data.position(), length);
+            data.position(data.position() + length);
+            return;
+        }
         
-        // вычисление дополненного текста (длина = 448 мод 512)
-        int paddingLength = 64 - (message.length % 64);
-        if (paddingLength <= 8) {
-            paddingLength += 64;
+        // слова читаем big-endian, как того требует стандарт
+        if (data.order() != ByteOrder.BIG_ENDIAN) {
+            ByteBuffer be = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+            update(be);
+            data.position(be.position());
+            return;
         }
         
-        // сам дополненный массив
-        byte[] padded = new byte[message.length + paddingLength];
+        // сначала дополняем хвост с прошлого вызова
+        if (bufferLength > 0) {
+            int n = Math.min(64 - bufferLength, data.remaining());
+            data.get(buffer, bufferLength, n);
+            bufferLength += n;
+            byteCount += n;
+            if (bufferLength < 64) {
+                return;
+            }
+            processBlock(buffer, 0);
+            bufferLength = 0;
+        }
         
-        // копируем в массив исходник
-        System.arraycopy(message, 0, padded, 0, message.length);
+        // целые блоки direct/mapped буфера читаем напрямую, без копии в byte[]
+        int position = data.position();
+        int limit = data.limit();
+        while (limit - position >= 64) {
+            processBlock(data, position);
+            position += 64;
+        }
+        byteCount += position - data.position();
+        data.position(position);
+        
+        // остаток в хвост
+        bufferLength = data.remaining();
+        data.get(buffer, 0, bufferLength);
+        byteCount += bufferLength;
+    }
+    
+    // завершение: дополняем только последний блок, после чего объект сбрасывается
+    public byte[] digest() {
+        byte[] result = new byte[32];
+        digest(result, 0);
+        return result;
+    }
+    
+    // то же, но результат пишется в готовый массив (32 байта), без выделения памяти
+    public void digest(byte[] out, int offset) {
+        long bitLength = byteCount * 8;
         
         // добавление 1 бита
-        padded[message.length] = (byte) 0x80;
+        buffer[bufferLength++] = (byte) 0x80;
+        
+        // если длина не влезает в этот блок, нужен еще один
+        if (bufferLength > 56) {
+            Arrays.fill(buffer, bufferLength, 64, (byte) 0);
+            processBlock(buffer, 0);
+            bufferLength = 0;
+        }
         
-        // попутно были добавлены нули
+        // нули до 448 бит
+        Arrays.fill(buffer, bufferLength, 56, (byte) 0);
         
         // завершаем длиной исходного текста в битах
-        int lengthPosition = padded.length - 8;
         for (int i = 0; i < 8; i++) {
-            padded[lengthPosition + i] = (byte) (originalBitLength >>> (56 - i * 8));
+            buffer[56 + i] = (byte) (bitLength >>> (56 - i * 8));
         }
+        processBlock(buffer, 0);
         
-        return padded;
+        // преобразуем из массива инт в массив байт
+        for (int i = 0; i < 8; i++) {
+            int value = state[i];
+            out[offset + i * 4] = (byte) (value >>> 24);
+            out[offset + i * 4 + 1] = (byte) (value >>> 16);
+            out[offset + i * 4 + 2] = (byte) (value >>> 8);
+            out[offset + i * 4 + 3] = (byte) value;
+        }
+        reset();
+    }
+    
+    // само вычисление
+    public static byte[] hash(byte[] data) {
+        SHA256 sha = LOCAL.get();
+        sha.reset();
+        sha.update(data);
+        return sha.digest();
     }
     
     // обработка блока 512 бит
-    private static void processBlock(byte[] block, int offset, int[] hash) {
-        // W[0..63]
-        int[] W = new int[64];
-        
+    private void processBlock(byte[] block, int offset) {
         // первые 16 слов - прямое разбиение блока
         for (int i = 0; i < 16; i++) {
             W[i] = ((block[offset + i * 4] & 0xFF) << 24) |
@@ -83,6 +230,23 @@ public class SHA256 {
                    (block[offset + i * 4 + 3] & 0xFF);
         }
         
+        compress();
+    }
+    
+    // то же самое, но слова берутся прямо из буфера (абсолютное чтение, позиция не меняется)
+    private void processBlock(ByteBuffer block, int offset) {
+        for (int i = 0; i < 16; i++) {
+            W[i] = block.getInt(offset + i * 4);
+        }
+        
+        compress();
+    }
+    
+    // расширение расписания и 64 раунда сжатия (W[0..15] уже заполнены)
+    private void compress() {
+        int[] W = this.W;
+        int[] hash = state;
+        
         // остальные 48 слов по формуле
         for (int i = 16; i < 64; i++) {
             W[i] = sigma1(W[i - 2]) + W[i - 7] + sigma0(W[i - 15]) + W[i - 16];
@@ -128,54 +292,38 @@ public class SHA256 {
     // & - логическое и
     // xor - исключающее или
     // not - логическое отрицание
-    // ROTR - циклический сдвиг вправо
+    // ROTR - циклический сдвиг вправо (Integer.rotateRight, JIT заменяет его одной инструкцией)
 
     // функция выбора ch(x, y, z) = (x & y) xor (not(x) & z)
-    private static int ch(int x, int y, int z) {
-        return (x & y) ^ (~x & z);
+    // (эквивалентная форма с меньшим числом операций)
+    static int ch(int x, int y, int z) {
+        return z ^ (x & (y ^ z));
     }
     
     // функция большинства maj(x, y, z) = (x & y) xor (x & z) xor (y & z)
-    private static int maj(int x, int y, int z) {
-        return (x & y) ^ (x & z) ^ (y & z);
+    static int maj(int x, int y, int z) {
+        return (x & y) | (z & (x | y));
     }
     
     // циклические сдвиги
     // Σ_0(x) = ROTR(x, 2) xor ROTR(x, 13) xor ROTR(x, 22)
-    private static int bigSigma0(int x) {
-        return rotateRight(x, 2) ^ rotateRight(x, 13) ^ rotateRight(x, 22);
+    static int bigSigma0(int x) {
+        return Integer.rotateRight(x, 2) ^ Integer.rotateRight(x, 13) ^ Integer.rotateRight(x, 22);
     }
     
     // Σ_1(x) = ROTR(x, 6) xor ROTR(x, 11) xor ROTR(x, 25)
-    private static int bigSigma1(int x) {
-        return rotateRight(x, 6) ^ rotateRight(x, 11) ^ rotateRight(x, 25);
+    static int bigSigma1(int x) {
+        return Integer.rotateRight(x, 6) ^ Integer.rotateRight(x, 11) ^ Integer.rotateRight(x, 25);
     }
     
     // σ_0(x) = ROTR(x, 7) xor ROTR(x, 18) xor SHR(x, 3)
-    private static int sigma0(int x) {
-        return rotateRight(x, 7) ^ rotateRight(x, 18) ^ (x >>> 3);
+    static int sigma0(int x) {
+        return Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18) ^ (x >>> 3);
     }
     
     // σ_1(x) = ROTR(x, 17) xor ROTR(x, 19) xor SHR(x, 10)
-    private static int sigma1(int x) {
-        return rotateRight(x, 17) ^ rotateRight(x, 19) ^ (x >>> 10);
-    }
-    
-    // описание цикл сдвига вправо
-    private static int rotateRight(int x, int n) {
-        return (x >>> n) | (x << (32 - n));
-    }
-    
-    // Преобразование массива int[8] в byte[32]
-    private static byte[] intArrayToByteArray(int[] arr) {
-        ByteBuffer buffer = ByteBuffer.allocate(arr.length * 4);
-        buffer.order(ByteOrder.BIG_ENDIAN);
-        
-        for (int value : arr) {
-            buffer.putInt(value);
-        }
-        
-        return buffer.array();
+    static int sigma1(int x) {
+        return Integer.rotateRight(x, 17) ^ Integer.rotateRight(x, 19) ^ (x >>> 10);
     }
     
     // хэш в шестнадцатеричную строку
@@ -0,0 +1,111 @@
+import java.io.*;
+import java.math.BigInteger;
+
+// файл подписи .sig
+// старый формат (обычный SHA-256): длина подписи + байты подписи - его по-прежнему пишет RSA.saveSignature
+// новый формат: "RSIG", версия, режим хэширования, размер куска, длина подписи + байты подписи
+// версия 2 дополнительно хранит размер файла и хэши всех кусков (для проверки отдельных диапазонов)
+public class SignatureFile {
+    
+    public static final int MODE_SHA256 = 0;  // подписан SHA-256 всего файла
+    public static final int MODE_TREE = 1;    // подписан корень дерева Меркле по кускам
+    
+    private static final int MAGIC = 0x52534947; // "RSIG"
+    private static final int VERSION = 1;
+    private static final int VERSION_WITH_CHUNKS = 2;
+    
+    public final int mode;
+    public final int chunkSize;        // только для MODE_TREE
+    public final BigInteger signature;
+    public final long fileSize;        // только при наличии chunkHashes
+    public final byte[][] chunkHashes; // хэши листьев дерева или null
+    
+    public SignatureFile(int mode, int chunkSize, BigInteger signature) {
+        this(mode, chunkSize, signature, 0, null);
+    }
+    
+    public SignatureFile(int mode, int chunkSize, BigInteger signature, long fileSize, byte[][] chunkHashes) {
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+        this.signature = signature;
+        this.fileSize = fileSize;
+        this.chunkHashes = chunkHashes;
+    }
+    
+    public void write(String filename) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            if (mode == MODE_SHA256) {
+                // обычную подпись пишем в старом формате, чтобы ее понимали старые версии
+                writeSignature(dos, signature);
+                return;
+            }
+            dos.writeInt(MAGIC);
+            dos.writeByte(chunkHashes != null ? VERSION_WITH_CHUNKS : VERSION);
+            dos.writeByte(mode);
+            dos.writeInt(chunkSize);
+            if (chunkHashes != null) {
+                dos.writeLong(fileSize);
+                dos.writeInt(chunkHashes.length);
+                for (byte[] chunkHash : chunkHashes) {
+                    dos.write(chunkHash);
+                }
+            }
+            writeSignature(dos, signature);
+        }
+    }
+    
+    public static SignatureFile read(String filename) throws IOException {
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            int first = dis.readInt();
+            
+            // старый формат начинается сразу с длины подписи
+            if (first != MAGIC) {
+                return new SignatureFile(MODE_SHA256, 0, readSignature(dis, first));
+            }
+            
+            int version = dis.readUnsignedByte();
+            if (version != VERSION && version != VERSION_WITH_CHUNKS) {
+                throw new IOException("Неподдерживаемая версия файла подписи: " + version);
+            }
+            int mode = dis.readUnsignedByte();
+            int chunkSize = dis.readInt();
+            
+            long fileSize = 0;
+            byte[][] chunkHashes = null;
+            if (version == VERSION_WITH_CHUNKS) {
+                fileSize = dis.readLong();
+                int count = dis.readInt();
+                if (count <= 0 || chunkSize <= 0 || count != expectedChunks(fileSize, chunkSize)) {
+                    throw new IOException("Список хэшей кусков не соответствует размеру файла");
+                }
+                chunkHashes = new byte[count][32];
+                for (byte[] chunkHash : chunkHashes) {
+                    dis.readFully(chunkHash);
+                }
+            }
+            return new SignatureFile(mode, chunkSize, readSignature(dis, dis.readInt()), fileSize, chunkHashes);
+        }
+    }
+    
+    // сколько кусков у файла такого размера (пустой файл - один пустой кусок)
+    public static long expectedChunks(long fileSize, int chunkSize) {
+        return Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+    }
+    
+    private static void writeSignature(DataOutputStream dos, BigInteger signature) throws IOException {
+        byte[] sigBytes = signature.toByteArray();
+        dos.writeInt(sigBytes.length);
+        dos.write(sigBytes);
+    }
+    
+    private static BigInteger readSignature(DataInputStream dis, int length) throws IOException {
+        if (length <= 0 || length > 64 * 1024) {
+            throw new IOException("Некорректная длина подписи: " + length);
+        }
+        byte[] sigBytes = new byte[length];
+        dis.readFully(sigBytes);
+        return new BigInteger(sigBytes);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,333 @@
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// манифест подписей: все записи (путь, SHA-256, подпись) в одном файле вместо .sig на каждый файл
+// формат: "RSMF", версия, затем записи подряд (дописываются при пакетной подписи),
+// в конце индекс - пары (ключ пути, смещение записи), отсортированные по ключу, и хвост:
+// смещение индекса, число записей, "RSMI"
+// пути хранятся относительно папки манифеста; при повторной подписи файла действует последняя запись
+public class SignatureManifest {
+    
+    public static final String DEFAULT_NAME = "signatures.manifest"; // ищется рядом с файлом, если нет .sig
+    
+    private static final int MAGIC = 0x52534d46;        // "RSMF"
+    private static final int INDEX_MAGIC = 0x52534d49;  // "RSMI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final int FOOTER_SIZE = 16;
+    private static final int MAX_FIELD = 64 * 1024;
+    
+    // одна запись манифеста
+    public static class Entry {
+        public final String path;
+        public final byte[] digest;
+        public final BigInteger signature;
+        
+        Entry(String path, byte[] digest, BigInteger signature) {
+            this.path = path;
+            this.digest = digest;
+            this.signature = signature;
+        }
+    }
+    
+    private final Path base;
+    private final ByteBuffer map;
+    private final int count;
+    private final int indexOffset;
+    
+    private SignatureManifest(Path base, ByteBuffer map, int count, int indexOffset) {
+        this.base = base;
+        this.map = map;
+        this.count = count;
+        this.indexOffset = indexOffset;
+    }
+    
+    // открытие для проверки: файл отображается в память целиком, поиск - двоичный по индексу
+    public static SignatureManifest open(String filename) throws IOException {
+        Path path = Paths.get(filename).toAbsolutePath().normalize();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Манифест больше 2 ГБ не поддерживается");
+            }
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new IOException("Манифест без индекса (запись не была завершена): " + filename);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            checkHeader(map, filename);
+            
+            long indexOffset = map.getLong((int) size - FOOTER_SIZE);
+            int count = map.getInt((int) size - 8);
+            if (map.getInt((int) size - 4) != INDEX_MAGIC || count < 0 || indexOffset < HEADER_SIZE
+                    || indexOffset + (long) count * 16 != size - FOOTER_SIZE) {
+                throw new IOException("Манифест без индекса (запись не была завершена): " + filename);
+            }
+            return new SignatureManifest(path.getParent(), map, count, (int) indexOffset);
+        }
+    }
+    
+    // запись для файла или null, если его нет в манифесте
+    public Entry lookup(String file) throws IOException {
+        String path = relativePath(base, file);
+        long key = key(path);
+        
+        // первый элемент индекса с ключом не меньше искомого
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (map.getLong(indexOffset + mid * 16) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        
+        // ключи могут совпасть у разных путей - сверяем сам путь
+        for (int i = low; i < count && map.getLong(indexOffset + i * 16) == key; i++) {
+            Entry entry = readEntry(map, (int) map.getLong(indexOffset + i * 16 + 8));
+            if (entry.path.equals(path)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+    
+    public int size() {
+        return count;
+    }
+    
+    // запись манифеста при пакетной подписи; потокобезопасна
+    // существующий манифест дописывается (старый индекс отрезается и строится заново при close)
+    public static class Writer implements Closeable {
+        private final Path base;
+        private final Path name;
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final Map<String, Long> offsets = new HashMap<>();
+        private long position;
+        
+        public Writer(String filename) throws IOException {
+            Path path = Paths.get(filename).toAbsolutePath().normalize();
+            this.base = path.getParent();
+            this.name = path.getFileName();
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                position = channel.size() == 0 ? 0 : scanExisting(filename);
+                channel.truncate(position);
+                channel.position(position);
+                out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+                if (position == 0) {
+                    out.writeInt(MAGIC);
+                    out.writeByte(VERSION);
+                    position = HEADER_SIZE;
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        
+        // записи уже лежащего манифеста; возвращает, где они кончаются
+        // (индекс и недописанная последняя запись после сбоя отбрасываются)
+        private long scanExisting(String filename) throws IOException {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Манифест больше 2 ГБ не поддерживается");
+            }
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            checkHeader(map, filename);
+            
+            long end = size;
+            if (size >= HEADER_SIZE + FOOTER_SIZE && map.getInt((int) size - 4) == INDEX_MAGIC) {
+                end = map.getLong((int) size - FOOTER_SIZE);
+            }
+            
+            int offset = HEADER_SIZE;
+            while (offset < end) {
+                int length = entryLength(map, offset, (int) end);
+                if (length < 0) {
+                    break;
+                }
+                offsets.put(readEntry(map, offset).path, (long) offset);
+                offset += length;
+            }
+            return offset;
+        }
+        
+        public String getPath() {
+            return base.resolve(name).toString();
+        }
+        
+        public synchronized void append(String file, BigInteger hash, BigInteger signature) throws IOException {
+            if (hash.signum() < 0 || hash.bitLength() > 256) {
+                throw new IllegalArgumentException("Ожидается хэш SHA-256 (32 байта)");
+            }
+            // хэш в виде ровно 32 байт (toByteArray дает лишний нулевой байт или меньше байт)
+            byte[] digest = new byte[32];
+            byte[] magnitude = hash.toByteArray();
+            int length = Math.min(magnitude.length, 32);
+            System.arraycopy(magnitude, magnitude.length - length, digest, 32 - length, length);
+            
+            String path = relativePath(base, file);
+            byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            byte[] sigBytes = signature.toByteArray();
+            
+            offsets.put(path, position);
+            out.writeInt(pathBytes.length);
+            out.write(pathBytes);
+            out.write(digest);
+            out.writeInt(sigBytes.length);
+            out.write(sigBytes);
+            position += 4 + pathBytes.length + 32 + 4 + sigBytes.length;
+        }
+        
+        // индекс и хвост пишутся один раз в конце, затем один fsync на весь манифест
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                long[][] index = new long[offsets.size()][];
+                int i = 0;
+                for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+                    index[i++] = new long[] {key(entry.getKey()), entry.getValue()};
+                }
+                Arrays.sort(index, (a, b) -> Long.compare(a[0], b[0]));
+                
+                for (long[] item : index) {
+                    out.writeLong(item[0]);
+                    out.writeLong(item[1]);
+                }
+                out.writeLong(position);
+                out.writeInt(index.length);
+                out.writeInt(INDEX_MAGIC);
+                out.flush();
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+    
+    private static void checkHeader(ByteBuffer map, String filename) throws IOException {
+        if (map.limit() < HEADER_SIZE || map.getInt(0) != MAGIC) {
+            throw new IOException("Не манифест подписей: " + filename);
+        }
+        if (map.get(4) != VERSION) {
+            throw new IOException("Неподдерживаемая версия манифеста: " + map.get(4));
+        }
+    }
+    
+    // длина записи по смещению или -1, если она обрезана или повреждена
+    private static int entryLength(ByteBuffer map, int offset, int end) {
+        if (end - offset < 4) {
+            return -1;
+        }
+        int pathLength = map.getInt(offset);
+        if (pathLength <= 0 || pathLength > MAX_FIELD || end - offset < 4 + pathLength + 32 + 4) {
+            return -1;
+        }
+        int sigLength = map.getInt(offset + 4 + pathLength + 32);
+        int length = 4 + pathLength + 32 + 4 + sigLength;
+        if (sigLength <= 0 || sigLength > MAX_FIELD || end - offset < length) {
+            return -1;
+        }
+        return length;
+    }
+    
+    private static Entry readEntry(ByteBuffer map, int offset) throws IOException {
+        if (entryLength(map, offset, map.limit()) < 0) {
+            throw new IOException("Поврежденная запись манифеста по смещению " + offset);
+        }
+        int pathLength = map.getInt(offset);
+        byte[] pathBytes = new byte[pathLength];
+        map.get(offset + 4, pathBytes);
+        byte[] digest = new byte[32];
+        map.get(offset + 4 + pathLength, digest);
+        byte[] sigBytes = new byte[map.getInt(offset + 4 + pathLength + 32)];
+        map.get(offset + 4 + pathLength + 32 + 4, sigBytes);
+        return new Entry(new String(pathBytes, StandardCharsets.UTF_8), digest, new BigInteger(sigBytes));
+    }
+    
+    // путь файла относительно папки манифеста, с разделителем '/'
+    private static String relativePath(Path base, String file) {
+        Path path = Paths.get(file).toAbsolutePath().normalize();
+        Path relative = path.startsWith(base) ? base.relativize(path) : path;
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+    
+    // ключ индекса: первые 8 байт SHA-256 от пути
+    private static long key(String path) {
+        return ByteBuffer.wrap(SHA256.hash(path.getBytes(StandardCharsets.UTF_8))).getLong();
+    }
+    
+    // манифест по умолчанию в папке файла (null, если его там нет)
+    // открывается один раз на папку; заново - только если файл манифеста изменился
+    public static SignatureManifest openDefaultFor(String file) throws IOException {
+        Path directory = Paths.get(file).toAbsolutePath().normalize().getParent();
+        Path manifest = directory.resolve(DEFAULT_NAME);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(manifest, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            synchronized (defaults) {
+                defaults.remove(directory);
+            }
+            return null;
+        }
+        
+        Opened opened;
+        synchronized (defaults) {
+            opened = defaults.get(directory);
+        }
+        if (opened == null || !opened.modified.equals(attributes.lastModifiedTime())
+                || opened.size != attributes.size()) {
+            opened = new Opened(open(manifest.toString()), attributes.lastModifiedTime(), attributes.size());
+            synchronized (defaults) {
+                defaults.put(directory, opened);
+            }
+        }
+        return opened.manifest;
+    }
+    
+    // открытый манифест по умолчанию и состояние файла, с которого он был прочитан
+    private static class Opened {
+        final SignatureManifest manifest;
+        final FileTime modified;
+        final long size;
+        
+        Opened(SignatureManifest manifest, FileTime modified, long size) {
+            this.manifest = manifest;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+    
+    // сколько манифестов по умолчанию держать открытыми (каждый - отображение файла в память)
+    private static final int MAX_OPEN_DEFAULTS = 64;
+    
+    // папка -> открытый в ней манифест по умолчанию; давно не нужные вытесняются (LRU),
+    // чтобы долгоживущий процесс не копил отображения по всем папкам, которые когда-либо проверял
+    private static final Map<Path, Opened> defaults = new LinkedHashMap<Path, Opened>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Opened> eldest) {
+            return size() > MAX_OPEN_DEFAULTS;
+        }
+    };
+}
\ No newline at end of file
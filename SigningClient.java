@@ -0,0 +1,131 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// клиент демона подписи (SigningDaemon): те же вызовы, что RSA.signFile / RSA.verifySignature,
+// но ключи уже загружены в демоне и ключ в вызове не нужен
+// соединения переиспользуются; одновременные вызовы из разных потоков идут по разным соединениям,
+// и демон может подписать их одной пачкой
+public class SigningClient implements Closeable {
+    
+    // одно открытое соединение с демоном
+    private static class Connection implements Closeable {
+        final SocketChannel channel;
+        final DataInputStream in;
+        final DataOutputStream out;
+        
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        }
+        
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+    
+    private final SocketAddress address;
+    private final byte[] authToken;     // для TCP, null для Unix-сокета
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+    
+    public SigningClient(SocketAddress address, byte[] authToken) {
+        this.address = address;
+        this.authToken = authToken != null ? authToken.clone() : null;
+    }
+    
+    // клиент для Unix-сокета
+    public static SigningClient forSocket(String socketPath) {
+        return new SigningClient(UnixDomainSocketAddress.of(socketPath), null);
+    }
+    
+    // клиент для TCP на loopback; токен читается из того же файла, что у демона
+    public static SigningClient forPort(int port, String tokenFile) throws IOException {
+        return new SigningClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                Files.readAllBytes(Paths.get(tokenFile)));
+    }
+    
+    public String signFile(String inputFile) throws IOException {
+        return signFile(inputFile, RSA.HashMode.STREAM);
+    }
+    
+    // возвращает путь к файлу подписи, как RSA.signFile
+    public String signFile(String inputFile, RSA.HashMode mode) throws IOException {
+        return call(SigningDaemon.OP_SIGN, inputFile, mode);
+    }
+    
+    public boolean verifySignature(String inputFile) throws IOException {
+        return verifySignature(inputFile, RSA.HashMode.STREAM);
+    }
+    
+    public boolean verifySignature(String inputFile, RSA.HashMode mode) throws IOException {
+        return Boolean.parseBoolean(call(SigningDaemon.OP_VERIFY, inputFile, mode));
+    }
+    
+    // путь передается абсолютным: у демона своя рабочая папка
+    private String call(int op, String inputFile, RSA.HashMode mode) throws IOException {
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = open();
+        }
+        
+        int status;
+        String reply;
+        try {
+            connection.out.writeByte(op);
+            connection.out.writeUTF(Paths.get(inputFile).toAbsolutePath().toString());
+            connection.out.writeByte(mode.ordinal());
+            connection.out.flush();
+            
+            status = connection.in.readUnsignedByte();
+            reply = connection.in.readUTF();
+        } catch (IOException e) {
+            // при обрыве соединение в пул не возвращаем
+            connection.close();
+            throw e;
+        }
+        
+        idle.add(connection);
+        if (status != SigningDaemon.STATUS_OK) {
+            throw new IOException("Ошибка демона подписи: " + reply);
+        }
+        return reply;
+    }
+    
+    // новое соединение; по TCP сначала отправляется токен
+    private Connection open() throws IOException {
+        Connection connection = new Connection(SocketChannel.open(address));
+        if (authToken == null) {
+            return connection;
+        }
+        try {
+            connection.out.writeInt(authToken.length);
+            connection.out.write(authToken);
+            connection.out.flush();
+            if (connection.in.readUnsignedByte() != SigningDaemon.STATUS_OK) {
+                throw new IOException("Демон подписи отклонил токен: " + connection.in.readUTF());
+            }
+            connection.in.readUTF();
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,392 @@
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// долгоживущий процесс подписи: ключи загружены один раз, код уже прогрет JIT
+// запросы приходят через Unix-сокет (или TCP на loopback), на каждое соединение свой поток из пула
+// Unix-сокет создается в папке, доступной только владельцу; по TCP подключиться может любой локальный
+// процесс, поэтому там соединение начинается с секретного токена (файл с правами только владельца)
+// одновременные запросы на подпись собираются в пачки и подписываются через BatchSigner.signHashes
+// клиент - SigningClient
+// запуск: java SigningDaemon (--socket путь | --port N --token-file файл)
+//                            [--private закрытый.key] [--public открытый.key] [--threads N]
+public class SigningDaemon implements Closeable {
+    
+    // коды операций и ответов протокола
+    static final int OP_SIGN = 1;
+    static final int OP_VERIFY = 2;
+    static final int STATUS_OK = 0;
+    static final int STATUS_ERROR = 1;
+    
+    // размер случайного токена для TCP
+    static final int TOKEN_SIZE = 32;
+    
+    // больше этого в одну пачку не берем
+    private static final int MAX_BATCH = 256;
+    
+    // запрос на подпись, ждущий своей пачки
+    private static class PendingSign {
+        final BigInteger hash;
+        final CompletableFuture<BigInteger> result = new CompletableFuture<>();
+        
+        PendingSign(BigInteger hash) {
+            this.hash = hash;
+        }
+    }
+    
+    private final ServerSocketChannel server;
+    private final Path socketFile;      // null для TCP
+    private final byte[] authToken;     // токен для TCP, null для Unix-сокета
+    private final RSA.KeyPair privateKey;
+    private final RSA.KeyPair publicKey;
+    private final BatchSigner signer;
+    private final ExecutorService connections;
+    private final BlockingQueue<PendingSign> pending = new LinkedBlockingQueue<>();
+    private final Thread batcher;
+    private volatile boolean closed;
+    
+    // privateKey или publicKey может быть null - тогда соответствующие запросы отклоняются
+    // authToken обязателен для TCP и не используется для Unix-сокета
+    public SigningDaemon(SocketAddress address, byte[] authToken, RSA.KeyPair privateKey, RSA.KeyPair publicKey,
+            int threads) throws IOException {
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+        this.signer = privateKey != null
+                ? new BatchSigner(privateKey, 1, threads, MAX_BATCH, RSA.HashMode.STREAM)
+                : null;
+        
+        if (address instanceof UnixDomainSocketAddress) {
+            socketFile = ((UnixDomainSocketAddress) address).getPath().toAbsolutePath();
+            this.authToken = null;
+            preparePrivateDirectory(socketFile.getParent());
+            // старый сокет от прошлого запуска мешает bind; удаляем только сокет, а не любой файл
+            if (Files.exists(socketFile, LinkOption.NOFOLLOW_LINKS)) {
+                if (!Files.readAttributes(socketFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+                    throw new IOException("По пути сокета лежит не сокет: " + socketFile);
+                }
+                Files.delete(socketFile);
+            }
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(address);
+        } else {
+            if (authToken == null || authToken.length < TOKEN_SIZE) {
+                throw new IllegalArgumentException("Для TCP нужен токен не короче " + TOKEN_SIZE + " байт");
+            }
+            socketFile = null;
+            this.authToken = authToken.clone();
+            server = ServerSocketChannel.open();
+            server.bind(address);
+        }
+        
+        connections = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "rsa-daemon-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (privateKey != null) {
+            RSA.prepare(privateKey);
+        }
+        
+        batcher = new Thread(this::batchLoop, "rsa-daemon-batcher");
+        batcher.setDaemon(true);
+        batcher.start();
+    }
+    
+    // прием соединений до close(); блокирует вызывающий поток
+    public void serve() throws IOException {
+        RSA.log("Демон подписи слушает: " + server.getLocalAddress());
+        while (!closed) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            }
+            connections.execute(() -> handle(client));
+        }
+    }
+    
+    public SocketAddress getAddress() throws IOException {
+        return server.getLocalAddress();
+    }
+    
+    // папка сокета: создается с правами 0700, а существующая не должна быть доступна другим,
+    // иначе между bind и сменой прав к сокету успел бы подключиться кто угодно
+    private static void preparePrivateDirectory(Path directory) throws IOException {
+        try {
+            if (!Files.exists(directory)) {
+                Files.createDirectories(directory,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                return;
+            }
+            requireOwnerOnly(directory, "Папка сокета доступна не только владельцу: ");
+        } catch (UnsupportedOperationException e) {
+            RSA.log("Права на папку сокета не проверены: файловая система не POSIX");
+        }
+    }
+    
+    private static void requireOwnerOnly(Path path, String message) throws IOException {
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+        for (PosixFilePermission permission : permissions) {
+            if (permission.name().startsWith("GROUP") || permission.name().startsWith("OTHERS")) {
+                throw new IOException(message + path);
+            }
+        }
+    }
+    
+    // токен из файла; если файла нет - создается новый случайный с правами только владельца
+    // (создание атомарное: файл, созданный кем-то между проверкой и записью, не будет принят как свой)
+    // существующий файл принимается, только если это обычный файл не короче TOKEN_SIZE,
+    // недоступный группе и остальным - иначе токен мог прочитать кто угодно
+    public static byte[] loadOrCreateToken(String tokenFile) throws IOException {
+        Path path = Paths.get(tokenFile);
+        byte[] token = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(token);
+        try {
+            try {
+                Files.createFile(path,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                Files.createFile(path);
+            }
+        } catch (FileAlreadyExistsException e) {
+            return readToken(path);
+        }
+        Files.write(path, token);
+        return token;
+    }
+    
+    private static byte[] readToken(Path path) throws IOException {
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Файл токена - не обычный файл: " + path);
+        }
+        try {
+            requireOwnerOnly(path, "Файл токена доступен не только владельцу: ");
+        } catch (UnsupportedOperationException e) {
+            RSA.log("Права на файл токена не проверены: файловая система не POSIX");
+        }
+        byte[] token = Files.readAllBytes(path);
+        if (token.length < TOKEN_SIZE) {
+            throw new IOException("Файл токена короче " + TOKEN_SIZE + " байт: " + path);
+        }
+        return token;
+    }
+    
+    // запросы одного соединения по очереди, пока клиент его не закроет
+    private void handle(SocketChannel client) {
+        try (client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(client)))) {
+            if (authToken != null && !authenticate(in, out)) {
+                return;
+            }
+            while (true) {
+                int op;
+                try {
+                    op = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                String file = in.readUTF();
+                int modeIndex = in.readUnsignedByte();
+                
+                try {
+                    if (modeIndex >= RSA.HashMode.values().length) {
+                        throw new IllegalArgumentException("Неизвестный режим хэширования: " + modeIndex);
+                    }
+                    RSA.HashMode mode = RSA.HashMode.values()[modeIndex];
+                    String reply;
+                    if (op == OP_SIGN) {
+                        reply = sign(file, mode);
+                    } else if (op == OP_VERIFY) {
+                        reply = String.valueOf(verify(file, mode));
+                    } else {
+                        throw new IllegalArgumentException("Неизвестная операция: " + op);
+                    }
+                    out.writeByte(STATUS_OK);
+                    out.writeUTF(reply);
+                } catch (Exception e) {
+                    out.writeByte(STATUS_ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage() != null ? e.getMessage() : e));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            RSA.log("Соединение закрыто с ошибкой: " + e.getMessage());
+        }
+    }
+    
+    // первое сообщение TCP-соединения - токен; при несовпадении соединение закрывается
+    private boolean authenticate(DataInputStream in, DataOutputStream out) throws IOException {
+        int length = in.readInt();
+        if (length != authToken.length) {
+            out.writeByte(STATUS_ERROR);
+            out.writeUTF("Неверный токен");
+            out.flush();
+            return false;
+        }
+        byte[] token = new byte[length];
+        in.readFully(token);
+        boolean valid = MessageDigest.isEqual(token, authToken);
+        out.writeByte(valid ? STATUS_OK : STATUS_ERROR);
+        out.writeUTF(valid ? "" : "Неверный токен");
+        out.flush();
+        return valid;
+    }
+    
+    // хэш считается в потоке соединения, возведение в степень - пачкой в потоке сборки
+    private String sign(String file, RSA.HashMode mode) throws Exception {
+        if (signer == null) {
+            throw new IllegalStateException("Демон запущен без закрытого ключа");
+        }
+        PendingSign request = new PendingSign(RSA.computeFileHash(file, mode));
+        pending.put(request);
+        BigInteger signature = request.result.get();
+        
+        String signatureFile = file + ".sig";
+        RSA.saveSignature(signature, signatureFile);
+        return signatureFile;
+    }
+    
+    private boolean verify(String file, RSA.HashMode mode) throws Exception {
+        if (publicKey == null) {
+            throw new IllegalStateException("Демон запущен без открытого ключа");
+        }
+        return RSA.verifySignature(file, publicKey, mode);
+    }
+    
+    // сборка пачек: ждем первый запрос и забираем все, что успело накопиться за время прошлой пачки
+    private void batchLoop() {
+        List<PendingSign> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            
+            BigInteger[] hashes = new BigInteger[batch.size()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = batch.get(i).hash;
+            }
+            try {
+                BigInteger[] signatures = signer.signHashes(hashes);
+                for (int i = 0; i < signatures.length; i++) {
+                    batch.get(i).result.complete(signatures[i]);
+                }
+            } catch (Exception e) {
+                for (PendingSign request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+                if (e instanceof InterruptedException) {
+                    break;
+                }
+            }
+            batch.clear();
+        }
+        
+        // ожидающие запросы не должны висеть вечно
+        PendingSign request;
+        while ((request = pending.poll()) != null) {
+            request.result.completeExceptionally(new IllegalStateException("Демон остановлен"));
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        batcher.interrupt();
+        connections.shutdownNow();
+        if (signer != null) {
+            signer.close();
+        }
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        SocketAddress address = null;
+        String privateKeyFile = null;
+        String publicKeyFile = null;
+        String tokenFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--socket":
+                    address = UnixDomainSocketAddress.of(args[i + 1]);
+                    break;
+                case "--port":
+                    address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[i + 1]));
+                    break;
+                case "--token-file":
+                    tokenFile = args[i + 1];
+                    break;
+                case "--private":
+                    privateKeyFile = args[i + 1];
+                    break;
+                case "--public":
+                    publicKeyFile = args[i + 1];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестная опция: " + args[i]);
+            }
+        }
+        boolean tcp = address instanceof InetSocketAddress;
+        if (address == null || (privateKeyFile == null && publicKeyFile == null) || (tcp && tokenFile == null)) {
+            System.err.println("Использование: java SigningDaemon (--socket путь | --port N --token-file файл)"
+                    + " [--private закрытый.key] [--public открытый.key] [--threads N]");
+            System.exit(2);
+        }
+        
+        RSA.KeyPair privateKey = privateKeyFile != null ? RSA.loadKeyPair(privateKeyFile, true) : null;
+        RSA.KeyPair publicKey = publicKeyFile != null ? RSA.loadKeyPair(publicKeyFile, false) : null;
+        // по запросу в консоль не пишем
+        RSA.setVerbose(false);
+        
+        byte[] token = tcp ? loadOrCreateToken(tokenFile) : null;
+        SigningDaemon daemon = new SigningDaemon(address, token, privateKey, publicKey, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                // процесс и так завершается
+            }
+        }));
+        System.out.println("Демон подписи запущен: " + daemon.getAddress());
+        daemon.serve();
+    }
+}
\ No newline at end of file
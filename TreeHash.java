@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// древовидное (Меркле) хэширование файла: куски фиксированного размера хэшируются параллельно,
+// затем хэши попарно сворачиваются в корень
+// лист = SHA256(0x00 || кусок), узел = SHA256(0x01 || левый || правый) - листья не спутать с узлами
+// подписывается не сам корень, а signedDigest: корень - тоже обычный SHA-256 (например, SHA256(0x00 || X)
+// для файла из одного куска), и подпись голого корня годилась бы как обычная подпись файла 0x00 || X
+public class TreeHash {
+    
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    
+    private static final byte[] LEAF_PREFIX = {0x00};
+    private static final byte[] NODE_PREFIX = {0x01};
+    private static final byte[] SIGNED_PREFIX = "RSIG-tree".getBytes(StandardCharsets.US_ASCII);
+    
+    // корень дерева для файла
+    public static byte[] root(Path file, int chunkSize) throws IOException {
+        return root(leafHashes(file, chunkSize));
+    }
+    
+    // хэши всех кусков файла (пустой файл - один пустой кусок)
+    public static byte[][] leafHashes(Path file, int chunkSize) throws IOException {
+        return leafHashes(file, chunkSize, ForkJoinPool.commonPool());
+    }
+    
+    public static byte[][] leafHashes(Path file, int chunkSize, ForkJoinPool pool) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Размер куска должен быть положительным: " + chunkSize);
+        }
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            byte[][] leaves = new byte[chunks][];
+            
+            // каждый кусок отображается и хэшируется в своем потоке
+            try {
+                pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(i -> {
+                    long position = (long) i * chunkSize;
+                    long length = Math.min(chunkSize, size - position);
+                    leaves[i] = leafHash(channel, position, length);
+                })).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Хэширование прервано", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Ошибка при хэшировании куска", e.getCause());
+            }
+            return leaves;
+        }
+    }
+    
+    // хэш одного куска файла
+    public static byte[] leafHash(FileChannel channel, long position, long length) {
+        SHA256 sha = new SHA256();
+        sha.update(LEAF_PREFIX);
+        if (length > 0) {
+            try {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                sha.update(chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sha.digest();
+    }
+    
+    // хэш куска, уже лежащего в памяти
+    public static byte[] leafHash(byte[] data, int offset, int length) {
+        SHA256 sha = new SHA256();
+        sha.update(LEAF_PREFIX);
+        sha.update(data, offset, length);
+        return sha.digest();
+    }
+    
+    public static byte[] nodeHash(byte[] left, byte[] right) {
+        SHA256 sha = new SHA256();
+        sha.update(NODE_PREFIX);
+        sha.update(left);
+        sha.update(right);
+        return sha.digest();
+    }
+    
+    // значение, которое подписывается в режиме дерева: SHA256("RSIG-tree" || размер куска || размер файла || корень)
+    // привязывает подпись к режиму и параметрам дерева
+    public static byte[] signedDigest(byte[] root, int chunkSize, long fileSize) {
+        SHA256 sha = new SHA256();
+        sha.update(SIGNED_PREFIX);
+        sha.update(ByteBuffer.allocate(12).putInt(chunkSize).putLong(fileSize).array());
+        sha.update(root);
+        return sha.digest();
+    }
+    
+    // сворачиваем уровень за уровнем; непарный последний узел поднимается выше без изменений
+    public static byte[] root(byte[][] leaves) {
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                int left = i * 2;
+                next[i] = left + 1 < level.length ? nodeHash(level[left], level[left + 1]) : level[left];
+            }
+            level = next;
+        }
+        return level[0];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// кэш успешных проверок подписи: (отпечаток открытого ключа, хэш, подпись) -> "подпись верна"
+// при попадании возведение в степень не выполняется; хэш данных все равно считается заново,
+// поэтому измененный файл в кэш не попадет - у него другой хэш
+// храним только положительные результаты, у записи есть срок жизни, размер ограничен
+// вытеснение - точный LRU: LinkedHashMap в порядке обращений под блокировкой;
+// ключ (SHA-256) считается до блокировки, под ней только поиск в таблице
+public class VerifyCache {
+    
+    private final int maxEntries;
+    private final long ttlNanos;
+    
+    // ключ - SHA-256 от (отпечаток, хэш, подпись), обернутый в ByteBuffer (сравнение по содержимому);
+    // значение - момент истечения записи (System.nanoTime); самая давняя по обращению вытесняется
+    private final Map<ByteBuffer, Long> entries = new LinkedHashMap<ByteBuffer, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    public VerifyCache(int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Размер и срок жизни кэша проверок должны быть положительными");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+    
+    // была ли эта подпись этого хэша уже успешно проверена этим ключом (и запись не истекла)
+    public boolean isKnownValid(RSA.KeyPair keys, BigInteger hash, BigInteger signature) {
+        ByteBuffer key = key(keys, hash, signature);
+        synchronized (entries) {
+            Long expiresAt = entries.get(key);
+            if (expiresAt != null) {
+                if (System.nanoTime() - expiresAt < 0) {
+                    hits.incrementAndGet();
+                    return true;
+                }
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+    
+    // запоминаем только успешную проверку
+    public void putValid(RSA.KeyPair keys, BigInteger hash, BigInteger signature) {
+        ByteBuffer key = key(keys, hash, signature);
+        synchronized (entries) {
+            entries.put(key, System.nanoTime() + ttlNanos);
+        }
+    }
+    
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Кэш проверок: записей %d, попаданий %d, промахов %d, вытеснено %d (%.1f%%)",
+                size(), hits.get(), misses.get(), evictions.get(), getHitRate() * 100);
+    }
+    
+    private static ByteBuffer key(RSA.KeyPair keys, BigInteger hash, BigInteger signature) {
+        byte[] hashBytes = hash.toByteArray();
+        byte[] sigBytes = signature.toByteArray();
+        SHA256 sha = new SHA256();
+        sha.update(keys.fingerprint());
+        // длины, чтобы границы полей нельзя было сдвинуть
+        sha.update(ByteBuffer.allocate(8).putInt(hashBytes.length).putInt(sigBytes.length).array());
+        sha.update(hashBytes);
+        sha.update(sigBytes);
+        return ByteBuffer.wrap(sha.digest());
+    }
+}
\ No newline at end of file